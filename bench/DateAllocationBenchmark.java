@@ -0,0 +1,179 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark delle allocazioni di searchAllHotels: misura i byte allocati e il tempo di una ricerca di una città
+ * non ancora caricata, compresa la lettura dal file e la visualizzazione di ogni hotel, e confronta la gestione
+ * delle date di quelle recensioni con i formati condivisi (vedi DateFormats) e con un SimpleDateFormat e un Gson
+ * creati ad ogni uso, come avveniva in precedenza in HotelService.readReview, Review.printPretty e Review.toString.
+ * I byte allocati sono quelli del thread del benchmark (com.sun.management.ThreadMXBean).
+ *
+ * Compilazione ed esecuzione dalla radice del progetto:
+ *   javac -encoding UTF-8 -cp lib/gson-2.10.1.jar -d out src/*.java bench/*.java
+ *   java -cp out:lib/gson-2.10.1.jar DateAllocationBenchmark [recensioni della città] [ripetizioni]
+ */
+public class DateAllocationBenchmark {
+
+    private static final String CITY = "Roma";
+    private static final String FILE_PATTERN = "MMM dd, yyyy, h:mm:ss a";
+    private static final String DISPLAY_PATTERN = "dd/MM/yyyy HH:mm:ss";
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int reviews = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        File hotels = File.createTempFile("hotels", ".json");
+        hotels.deleteOnExit();
+        List<String> dates = writeCatalog(hotels, reviews);
+
+        System.out.printf("%d reviews in %s, %d rounds%n", reviews, CITY, rounds);
+        System.out.printf("%-16s %14s %12s%n", "path", "KB/search", "ms/search");
+        // Un primo giro di ogni percorso esclude dalle misure il caricamento delle classi e la compilazione
+        measure(3, () -> search(hotels));
+        measure(3, () -> legacyDates(dates));
+        measure(3, () -> sharedDates(dates));
+        report("search", measure(rounds, () -> search(hotels)), rounds);
+        report("dates legacy", measure(rounds, () -> legacyDates(dates)), rounds);
+        report("dates shared", measure(rounds, () -> sharedDates(dates)), rounds);
+    }
+
+    /**
+     * Scrive il catalogo del benchmark: Hotels.json con le recensioni indicate, distribuite sugli hotel della città.
+     *
+     * @return Le date delle recensioni, nel formato del file.
+     */
+    private static List<String> writeCatalog(File file, int reviews) throws Exception {
+        JsonArray catalog;
+        try (Reader reader = new FileReader("Hotels.json", StandardCharsets.UTF_8)) {
+            catalog = JsonParser.parseReader(reader).getAsJsonArray();
+        }
+        List<JsonObject> city = new ArrayList<>();
+        for (JsonElement element : catalog) {
+            if (element.getAsJsonObject().get("city").getAsString().equals(CITY)) {
+                city.add(element.getAsJsonObject());
+            }
+        }
+        List<String> dates = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < reviews; i++) {
+            JsonObject hotel = city.get(i % city.size());
+            String date = DateFormats.format(DateFormats.REVIEW_FILE, now - TimeUnit.HOURS.toMillis(i));
+            dates.add(date);
+            JsonObject ratings = new JsonObject();
+            ratings.addProperty("cleaning", 3);
+            ratings.addProperty("position", 4);
+            ratings.addProperty("services", 2);
+            ratings.addProperty("quality", 5);
+            JsonObject review = new JsonObject();
+            review.add("ratings", ratings);
+            review.addProperty("rate", 1 + i % 5);
+            review.addProperty("date", date);
+            review.addProperty("user", "user" + i % 100);
+            hotel.getAsJsonArray("reviews").add(review);
+            hotel.addProperty("Number_reviews", hotel.get("Number_reviews").getAsInt() + 1);
+        }
+        Files.writeString(file.toPath(), new Gson().toJson(catalog), StandardCharsets.UTF_8);
+        return dates;
+    }
+
+    /**
+     * Cerca gli hotel della città con un nuovo servizio, per cui la città viene letta dal file,
+     * e li visualizza come farebbe ClientHandler. Il tempo misurato comprende la creazione del servizio.
+     */
+    private static long search(File hotels) throws Exception {
+        HotelService hotelService = new HotelService(hotels.getPath(), "239.255.0.1", "45678", false, 1, false,
+                new NotificationLog(1), 0);
+        try {
+            long bytes = THREADS.getCurrentThreadAllocatedBytes();
+            long length = 0;
+            for (Hotel hotel : hotelService.searchAllHotels(CITY)) {
+                length += hotel.printPretty().length();
+            }
+            bytes = THREADS.getCurrentThreadAllocatedBytes() - bytes;
+            check(length > 0);
+            return bytes;
+        } finally {
+            hotelService.close();
+        }
+    }
+
+    /**
+     * Legge, visualizza e converte in JSON le date delle recensioni creando un formato e un Gson ad ogni uso.
+     */
+    private static long legacyDates(List<String> dates) throws Exception {
+        long bytes = THREADS.getCurrentThreadAllocatedBytes();
+        long length = 0;
+        for (String text : dates) {
+            Date date = new SimpleDateFormat(FILE_PATTERN, Locale.US).parse(text);
+            length += new SimpleDateFormat(DISPLAY_PATTERN).format(date).length();
+            length += new Gson().toJson(new Review("user", 4, new Ratings(3, 4, 2, 5), date.getTime())).length();
+        }
+        check(length > 0);
+        return THREADS.getCurrentThreadAllocatedBytes() - bytes;
+    }
+
+    /**
+     * Legge, visualizza e converte in JSON le date delle recensioni con i formati e il Gson condivisi.
+     */
+    private static long sharedDates(List<String> dates) throws Exception {
+        long bytes = THREADS.getCurrentThreadAllocatedBytes();
+        long length = 0;
+        for (String text : dates) {
+            long date = DateFormats.parse(DateFormats.REVIEW_FILE, text);
+            length += DateFormats.format(DateFormats.REVIEW_DISPLAY, date).length();
+            length += new Review("user", 4, new Ratings(3, 4, 2, 5), date).toString().length();
+        }
+        check(length > 0);
+        return THREADS.getCurrentThreadAllocatedBytes() - bytes;
+    }
+
+    /**
+     * Operazione misurata: restituisce i byte allocati.
+     */
+    private interface Task {
+        long run() throws Exception;
+    }
+
+    /**
+     * Esegue più volte un'operazione.
+     *
+     * @return Byte allocati e nanosecondi trascorsi in totale.
+     */
+    private static long[] measure(int rounds, Task task) throws Exception {
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            bytes += task.run();
+        }
+        return new long[]{bytes, System.nanoTime() - start};
+    }
+
+    private static void report(String path, long[] measured, int rounds) {
+        System.out.printf("%-16s %14.1f %12.3f%n", path, measured[0] / 1024.0 / rounds, measured[1] / 1e6 / rounds);
+    }
+
+    private static void check(boolean condition) {
+        if (!condition) {
+            throw new AssertionError("empty output");
+        }
+    }
+}
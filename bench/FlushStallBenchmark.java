@@ -0,0 +1,175 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Benchmark delle attese dei lettori durante i salvataggi del catalogo, prima e dopo la separazione tra
+ * salvataggio e ricerche. Più thread cercano hotel mentre un altro salva ripetutamente il catalogo su un file
+ * ingrandito replicando Hotels.json; il benchmark riporta la durata delle ricerche (media, 99° percentile e
+ * massima) in due modalità:
+ *   before  le ricerche e il salvataggio condividono un lock, come quando le ricerche attendevano il lock
+ *           tenuto dal salvataggio per tutta la lettura e scrittura del file;
+ *   after   le ricerche leggono il catalogo senza lock, come nel servizio attuale.
+ *
+ * Compilazione ed esecuzione dalla radice del progetto:
+ *   javac -encoding UTF-8 -cp lib/gson-2.10.1.jar -d out src/*.java bench/*.java
+ *   java -cp out:lib/gson-2.10.1.jar FlushStallBenchmark [copie di Hotels.json] [thread lettori] [secondi]
+ */
+public class FlushStallBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        File hotels = File.createTempFile("hotels", ".json");
+        try {
+            List<String> cities = writeCatalog(hotels, copies);
+            System.out.printf("catalog: %d cities, %d KB, %d reader threads, %d s per mode%n",
+                    cities.size(), hotels.length() / 1024, readers, seconds);
+            System.out.printf("%-8s %8s %10s %10s %10s %10s%n", "mode", "flushes", "reads", "avg ms", "p99 ms",
+                    "max ms");
+            run("before", true, hotels, cities, readers, seconds);
+            run("after", false, hotels, cities, readers, seconds);
+        } finally {
+            // Il catalogo e le classifiche e popolarità salvate accanto ad ogni salvataggio
+            for (String suffix : new String[]{"", ".ranks", ".popularity"}) {
+                Files.deleteIfExists(new File(hotels.getPath() + suffix).toPath());
+            }
+        }
+    }
+
+    /**
+     * Scrive il catalogo del benchmark: copie di Hotels.json con ID e città distinti.
+     *
+     * @return Le città del catalogo.
+     */
+    private static List<String> writeCatalog(File file, int copies) throws Exception {
+        JsonArray original;
+        try (Reader reader = new FileReader("Hotels.json", StandardCharsets.UTF_8)) {
+            original = JsonParser.parseReader(reader).getAsJsonArray();
+        }
+        JsonArray catalog = new JsonArray();
+        List<String> cities = new ArrayList<>();
+        int id = 1;
+        for (int c = 0; c < copies; c++) {
+            for (JsonElement element : original) {
+                JsonObject hotel = element.getAsJsonObject().deepCopy();
+                String city = hotel.get("city").getAsString() + " " + c;
+                hotel.addProperty("id", id++);
+                hotel.addProperty("city", city);
+                hotel.addProperty("name", hotel.get("name").getAsString() + " " + c);
+                if (!cities.contains(city)) {
+                    cities.add(city);
+                }
+                catalog.add(hotel);
+            }
+        }
+        Files.writeString(file.toPath(), new Gson().toJson(catalog), StandardCharsets.UTF_8);
+        return cities;
+    }
+
+    private static void run(String mode, boolean sharedLock, File hotels, List<String> cities, int readers, int seconds)
+            throws Exception {
+        HotelService hotelService = new HotelService(hotels.getPath(), "239.255.0.1", "45678", false, 1, false,
+                new NotificationLog(1), 0);
+        // Tutte le città vengono caricate prima delle misure, per misurare solo l'attesa dei salvataggi
+        for (String city : cities) {
+            hotelService.searchAllHotels(city);
+        }
+        Object lock = new Object();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch go = new CountDownLatch(1);
+        List<long[]> latencies = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < readers; t++) {
+            // L'ultimo elemento contiene il numero di campioni raccolti
+            long[] samples = new long[1_000_000];
+            latencies.add(samples);
+            Thread worker = new Thread(() -> {
+                try {
+                    go.await();
+                    int n = 0;
+                    while (System.nanoTime() < deadline && n < samples.length - 1) {
+                        String city = cities.get(ThreadLocalRandom.current().nextInt(cities.size()));
+                        String name = "Hotel " + city.substring(0, city.lastIndexOf(' ')) + " 1 "
+                                + city.substring(city.lastIndexOf(' ') + 1);
+                        long start = System.nanoTime();
+                        if (sharedLock) {
+                            synchronized (lock) {
+                                hotelService.searchHotel(name, city);
+                            }
+                        } else {
+                            hotelService.searchHotel(name, city);
+                        }
+                        samples[n++] = System.nanoTime() - start;
+                    }
+                    samples[samples.length - 1] = n;
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        // Il salvataggio stampa i propri tempi: vengono nascosti per non mescolarli alla tabella
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        int flushes = 0;
+        go.countDown();
+        try {
+            while (System.nanoTime() < deadline) {
+                if (sharedLock) {
+                    synchronized (lock) {
+                        hotelService.saveHotelsToFile();
+                    }
+                } else {
+                    hotelService.saveHotelsToFile();
+                }
+                flushes++;
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } finally {
+            System.setOut(out);
+            hotelService.close();
+        }
+
+        int total = 0;
+        for (long[] samples : latencies) {
+            total += (int) samples[samples.length - 1];
+        }
+        long[] all = new long[total];
+        int i = 0;
+        for (long[] samples : latencies) {
+            int n = (int) samples[samples.length - 1];
+            System.arraycopy(samples, 0, all, i, n);
+            i += n;
+        }
+        Arrays.sort(all);
+        double sum = 0;
+        for (long latency : all) {
+            sum += latency;
+        }
+        System.out.printf("%-8s %8d %10d %10.4f %10.3f %10.3f%n", mode, flushes, total,
+                total == 0 ? 0 : sum / total / 1e6, total == 0 ? 0 : all[(int) (total * 0.99)] / 1e6,
+                total == 0 ? 0 : all[total - 1] / 1e6);
+    }
+}
@@ -0,0 +1,78 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Benchmark della MutationPipeline: più thread, come i ClientHandler, pubblicano recensioni sugli hotel
+ * di una città e il benchmark misura le recensioni applicate al secondo e la dimensione dei gruppi di eventi
+ * applicati insieme, al crescere del numero di thread.
+ *
+ * Compilazione ed esecuzione dalla radice del progetto:
+ *   javac -encoding UTF-8 -cp lib/gson-2.10.1.jar -d out src/*.java bench/*.java
+ *   java -cp out:lib/gson-2.10.1.jar PipelineBenchmark [recensioni per thread]
+ */
+public class PipelineBenchmark {
+
+    private static final String CITY = "Aosta";
+    private static final int[] THREADS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws Exception {
+        int perThread = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        System.out.printf("%-8s %10s %14s %12s   %s%n", "threads", "reviews", "reviews/s", "avg us", "pipeline");
+        for (int threads : THREADS) {
+            run(threads, perThread);
+        }
+    }
+
+    private static void run(int threads, int perThread) throws Exception {
+        // Ogni esecuzione parte da una copia del file degli hotel del progetto
+        File hotels = File.createTempFile("hotels", ".json");
+        hotels.deleteOnExit();
+        Files.copy(new File("Hotels.json").toPath(), hotels.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        AuthenticationService auth = new AuthenticationService(hotels.getPath() + ".users");
+        HotelService hotelService = new HotelService(hotels.getPath(), "239.255.0.1", "45678", false, 1, false,
+                new NotificationLog(1), 0);
+        List<Hotel> city = hotelService.searchAllHotels(CITY);
+        MutationPipeline pipeline = new MutationPipeline(1024, auth, hotelService);
+        pipeline.start();
+
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            User user = new User("bench" + threads + "_" + t, "password");
+            Thread worker = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                    for (int i = 0; i < perThread; i++) {
+                        Hotel hotel = city.get(ThreadLocalRandom.current().nextInt(city.size()));
+                        pipeline.submitReview(user, hotel, new Review(user.getUsername(), hotel.getName(), 4,
+                                new Ratings(4, 4, 4, 4)));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        pipeline.shutdown(10);
+        hotelService.close();
+
+        long reviews = (long) threads * perThread;
+        System.out.printf("%-8d %10d %14.0f %12.2f   %s%n", threads, reviews, reviews * 1e9 / elapsed,
+                elapsed / 1000.0 / reviews * threads, pipeline.getStats());
+    }
+}
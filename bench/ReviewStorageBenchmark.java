@@ -0,0 +1,102 @@
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Benchmark della memoria occupata dalle recensioni: confronta il registro a record fissi (vedi ReviewLog)
+ * con una lista di oggetti, ognuno con un oggetto Ratings, una Date e il nome dell'autore, come le recensioni
+ * venivano conservate in precedenza. Per ogni rappresentazione riporta i byte occupati nell'heap e fuori
+ * dall'heap per milione di recensioni.
+ * L'heap viene misurato dopo aver richiesto il garbage collector: per misure stabili conviene eseguirlo
+ * con un heap fisso, ad esempio -Xms2g -Xmx2g.
+ *
+ * Compilazione ed esecuzione dalla radice del progetto:
+ *   javac -encoding UTF-8 -cp lib/gson-2.10.1.jar -d out src/*.java bench/*.java
+ *   java -Xms2g -Xmx2g -cp out:lib/gson-2.10.1.jar ReviewStorageBenchmark [recensioni]
+ */
+public class ReviewStorageBenchmark {
+
+    private static final int USERS = 1_000;
+    private static final int HOTELS = 1_000;
+
+    /** Mantiene raggiungibili le recensioni durante la misura */
+    private static Object retained;
+
+    /**
+     * Recensione come veniva conservata prima del registro a record fissi.
+     */
+    private static final class LegacyReview {
+        private final String user;
+        private final float rate;
+        private final Ratings ratings;
+        private final Date date;
+
+        private LegacyReview(String user, float rate, Ratings ratings, Date date) {
+            this.user = user;
+            this.rate = rate;
+            this.ratings = ratings;
+            this.date = date;
+        }
+    }
+
+    public static void main(String[] args) {
+        int reviews = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String[] users = new String[USERS];
+        for (int u = 0; u < USERS; u++) {
+            users[u] = "user" + u;
+            UserDictionary.idOf(users[u]);
+        }
+
+        System.out.printf("%-10s %16s %16s %16s%n", "storage", "heap MB/M", "off-heap MB/M", "bytes/review");
+        long heapBefore = usedHeap();
+        List<List<LegacyReview>> objects = new ArrayList<>();
+        for (int h = 0; h < HOTELS; h++) {
+            objects.add(new ArrayList<>());
+        }
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < reviews; i++) {
+            objects.get(i % HOTELS).add(new LegacyReview(users[i % USERS], 1 + i % 5,
+                    new Ratings(3, 4, 2, 5), new Date(now - i * 1000L)));
+        }
+        retained = objects;
+        report("objects", usedHeap() - heapBefore, 0, reviews);
+        retained = null;
+        objects = null;
+
+        heapBefore = usedHeap();
+        long offHeapBefore = ReviewArena.getAllocatedBytes();
+        List<ReviewLog> logs = new ArrayList<>();
+        for (int h = 0; h < HOTELS; h++) {
+            logs.add(new ReviewLog());
+        }
+        for (int i = 0; i < reviews; i++) {
+            logs.get(i % HOTELS).append(new Review(users[i % USERS], 1 + i % 5, new Ratings(3, 4, 2, 5),
+                    now - i * 1000L));
+        }
+        retained = logs;
+        report("log", usedHeap() - heapBefore, ReviewArena.getAllocatedBytes() - offHeapBefore, reviews);
+        retained = null;
+    }
+
+    private static void report(String storage, long heap, long offHeap, int reviews) {
+        double perMillion = 1_000_000.0 / reviews / (1 << 20);
+        System.out.printf("%-10s %16.1f %16.1f %16.1f%n", storage, heap * perMillion, offHeap * perMillion,
+                (double) (heap + offHeap) / reviews);
+    }
+
+    /**
+     * Restituisce i byte occupati nell'heap dopo aver richiesto più volte il garbage collector.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import com.google.gson.Gson;
+
+/**
+ * Benchmark del calcolo dello score: confronta il calcolo in tempo costante dagli aggregati del registro
+ * delle recensioni (vedi ReviewLog) con la scansione di tutte le recensioni fatta in precedenza da
+ * Hotel.calculateScore, su hotel con un numero crescente di recensioni.
+ *
+ * Compilazione ed esecuzione dalla radice del progetto:
+ *   javac -encoding UTF-8 -cp lib/gson-2.10.1.jar -d out src/*.java bench/*.java
+ *   java -cp out:lib/gson-2.10.1.jar ScoreBenchmark [recensioni...]
+ */
+public class ScoreBenchmark {
+
+    private static final float WEIGHT_QUALITY = 0.4f;
+    private static final float WEIGHT_QUANTITY = 0.3f;
+    private static final float WEIGHT_ACTUALITY = 0.3f;
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[]{1_000, 10_000, 100_000} : parse(args);
+        System.out.printf("%-10s %16s %16s %16s %12s%n", "reviews", "aggregates us", "fallback us", "scan us", "max diff");
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    private static int[] parse(String[] args) {
+        int[] sizes = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        return sizes;
+    }
+
+    private static void run(int size) {
+        long now = System.currentTimeMillis();
+        Hotel logged = new Hotel();
+        logged.setId(1);
+        logged.setName("Bench");
+        logged.setCity("Bench City");
+        for (int i = 0; i < size; i++) {
+            // Recensioni distribuite nell'ultimo anno
+            long date = now - (long) i * TimeUnit.DAYS.toMillis(365) / size;
+            logged.setReview(new Review("user" + (i % 100), 1 + i % 5, new Ratings(3, 3, 3, 3), date));
+        }
+        // Lo stesso hotel con le recensioni come oggetti, come dopo la lettura del file con Gson
+        Gson gson = new Gson();
+        Hotel objects = gson.fromJson(gson.toJson(logged), Hotel.class);
+
+        float[] fast = new float[1];
+        double aggregates = timePerCall(() -> fast[0] = logged.calculateScore(now));
+        float[] fallbackScore = new float[1];
+        double fallback = timePerCall(() -> fallbackScore[0] = objects.calculateScore(now));
+        float[] scan = new float[1];
+        double scanTime = timePerCall(() -> scan[0] = scanScore(objects.getReviews(), now));
+
+        float diff = Math.max(Math.abs(fast[0] - fallbackScore[0]), Math.abs(fast[0] - scan[0]));
+        System.out.printf("%-10d %16.2f %16.2f %16.2f %12.6f%n", size, aggregates, fallback, scanTime, diff);
+    }
+
+    /**
+     * Misura il tempo medio di una chiamata in microsecondi, dopo un riscaldamento.
+     */
+    private static double timePerCall(Runnable call) {
+        for (int i = 0; i < ROUNDS; i++) {
+            call.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            call.run();
+        }
+        return (System.nanoTime() - start) / 1000.0 / ROUNDS;
+    }
+
+    /**
+     * Calcolo dello score come nella versione originale di Hotel.calculateScore: una scansione di tutte
+     * le recensioni con un oggetto Date per recensione.
+     */
+    private static float scanScore(List<Review> reviews, long currentTime) {
+        float qualityScore = 0;
+        float quantityScore = reviews.size();
+        float actualityScore = 0;
+        for (Review review : reviews) {
+            qualityScore += review.getrate();
+            long reviewTime = new Date(review.getDate()).getTime();
+            long diffInMinutes = TimeUnit.MINUTES.convert(currentTime - reviewTime, TimeUnit.MILLISECONDS);
+            actualityScore += 1.0f - ((float) diffInMinutes / (365 * 24 * 60));
+        }
+        if (!reviews.isEmpty()) {
+            qualityScore /= reviews.size();
+            actualityScore /= reviews.size();
+        }
+        return WEIGHT_QUALITY * qualityScore + WEIGHT_QUANTITY * quantityScore + WEIGHT_ACTUALITY * actualityScore;
+    }
+}
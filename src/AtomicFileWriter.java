@@ -0,0 +1,39 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Classe di utilità per sostituire il contenuto di un file in modo atomico.
+ * Il nuovo contenuto viene scritto in un file temporaneo nella stessa cartella, che viene poi rinominato
+ * sul file di destinazione: chi legge il file vede sempre la versione precedente o quella nuova completa,
+ * per cui la lettura non deve attendere la fine della scrittura.
+ */
+public final class AtomicFileWriter {
+
+    /**
+     * Costruttore privato: la classe contiene solo metodi statici.
+     */
+    private AtomicFileWriter() {
+    }
+
+    /**
+     * Sostituisce in modo atomico il contenuto di un file.
+     *
+     * @param file     Il file da sostituire.
+     * @param content  Il nuovo contenuto.
+     * @throws IOException  Se si verificano errori durante la scrittura o la rinomina.
+     */
+    public static void write(File file, String content) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -1,13 +1,11 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import com.google.gson.Gson;
@@ -23,13 +21,19 @@ import com.google.gson.stream.JsonReader;
  */
 public class AuthenticationService {
 
-    // Cache per gli utenti registrati
-    private final ConcurrentHashMap<String, User> UsersCache;
-    // Cache per gli utenti loggati
-    private final ConcurrentHashMap<String, User> loggedInUsers;
-    // Lock per scrivere nel file degli utenti
+    // Gson condiviso per il salvataggio del file degli utenti
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    // Cache per gli utenti registrati, per identificativo dell'utente (vedi UserDictionary)
+    private final ConcurrentHashMap<Integer, User> UsersCache;
+    // Cache per gli utenti loggati, per identificativo dell'utente
+    private final ConcurrentHashMap<Integer, User> loggedInUsers;
+    // Lock che serializza i salvataggi del file degli utenti: le letture non lo acquisiscono,
+    // perché il file viene sostituito in modo atomico (vedi AtomicFileWriter)
     //private final ReadWriteLock lock;
     private final Object lock = new Object();
+    // Durata dei controlli di login e registrazione eseguiti durante i salvataggi
+    private final FlushReaderStats flushReaders = new FlushReaderStats();
     // Path del file signedUpUsers.json
     private final String user_path;
 
@@ -54,8 +58,13 @@ public class AuthenticationService {
      */
     protected void checkSignup(String user) throws AuthenticationException, IOException {
 
-        if(UsersCache.containsKey(user) || isUserInFile(user)){
-            throw new AuthenticationException("User already exist");
+        long start = flushReaders.readStarted();
+        try {
+            if(UsersCache.containsKey(UserDictionary.find(user)) || isUserInFile(user)){
+                throw new AuthenticationException("User already exist");
+            }
+        } finally {
+            flushReaders.readEnded(start);
         }
     }
       
@@ -66,7 +75,7 @@ public class AuthenticationService {
      * @throws AuthenticationException
      */
     protected void checkAlreadyLogin (String user) throws AuthenticationException{
-        if (loggedInUsers.containsKey(user)){
+        if (loggedInUsers.containsKey(UserDictionary.find(user))){
             throw new AuthenticationException("User already logged in another session");
         }
     }
@@ -79,8 +88,13 @@ public class AuthenticationService {
      */
     protected void checkLogin (String user) throws AuthenticationException, IOException {
 
-        if (!UsersCache.containsKey(user) && !isUserInFile(user)){
-            throw new AuthenticationException("This username doesn't exist");
+        long start = flushReaders.readStarted();
+        try {
+            if (!UsersCache.containsKey(UserDictionary.find(user)) && !isUserInFile(user)){
+                throw new AuthenticationException("This username doesn't exist");
+            }
+        } finally {
+            flushReaders.readEnded(start);
         }
     }
    
@@ -89,11 +103,15 @@ public class AuthenticationService {
      * @param user
      * @param username
      * @param password
+     * @throws AuthenticationException
      */
-    protected void signup(User user, String username, String password) {
+    protected void signup(User user, String username, String password) throws AuthenticationException {
 
         user = new User(username, password);
-        UsersCache.put(username, user);
+        // Non sovrascrive un utente registrato nel frattempo con lo stesso username
+        if (UsersCache.putIfAbsent(user.getId(), user) != null) {
+            throw new AuthenticationException("User already exist");
+        }
         //printSignedUp();
     }
 
@@ -108,12 +126,16 @@ public class AuthenticationService {
      */
     protected User login (String username, String password) throws AuthenticationException, IOException {
 
-        User user;
         // Controlla se l'utente è in cache o nel file
-        if(UsersCache.containsKey(username)){
-            user = UsersCache.get(username);
-        }else{
-            user = getUserFromFile(username);
+        long start = flushReaders.readStarted();
+        User user;
+        try {
+            user = UsersCache.get(UserDictionary.find(username));
+            if (user == null) {
+                user = getUserFromFile(username);
+            }
+        } finally {
+            flushReaders.readEnded(start);
         }
 
         if (user == null) {
@@ -124,7 +146,7 @@ public class AuthenticationService {
             throw new AuthenticationException("Password not valid");
         }
         // Inserisce nella cache degli utenti loggati
-        loggedInUsers.put(username, user);
+        loggedInUsers.put(user.getId(), user);
         return user;
     }
 
@@ -138,8 +160,8 @@ public class AuthenticationService {
     protected String logout(User user) throws AuthenticationException {
 
         if(user == null) throw new AuthenticationException("User not logged in this session");
-        loggedInUsers.remove(user.getUsername(), user);
-        UsersCache.put(user.getUsername(), user);
+        loggedInUsers.remove(user.getId(), user);
+        UsersCache.put(user.getId(), user);
         return user.getUsername();
     }
 
@@ -160,11 +182,11 @@ public class AuthenticationService {
     }
 
     protected void printLoggedIn(){
-        System.out.println(loggedInUsers);
+        System.out.println(loggedInUsers.values());
     }
 
     protected void printSignedUp(){
-        System.out.println(UsersCache);
+        System.out.println(UsersCache.values());
     }
 
     
@@ -175,38 +197,36 @@ public class AuthenticationService {
      * @throws IOException
      */
     private boolean isUserInFile(String username) throws IOException {
-        // Sincronizzazione sull'oggetto lock per garantire l'accesso sicuro alle risorse condivise
+        // Il file viene sostituito in modo atomico dai salvataggi, per cui la lettura non richiede il lock
         //lock.readLock().lock();
-        synchronized (lock) {
-            try {
-                // Leggi l'intero file in una stringa
-                String content = new String(Files.readAllBytes(Paths.get(user_path)));
-    
-                // Controlla se la stringa è vuota
-                if (content.isEmpty()) {
-                    // Il file è vuoto, restituisci un valore predefinito o crea un array JSON vuoto
-                    return false;
-                }
-    
-                // Parsa la stringa JSON utilizzando JsonParser
-                JsonArray jsonArray = JsonParser.parseString(content).getAsJsonArray();
-    
-                // Itera su ogni elemento dell'array JSON
-                for (JsonElement element : jsonArray) {
-                    JsonObject jsonObject = element.getAsJsonObject();
-    
-                    // Estrai il nome utente dall'oggetto JSON
-                    String jsonUsername = jsonObject.get("username").getAsString();
-    
-                    // Verifica se l'utente corrente è quello cercato
-                    if (jsonUsername.equals(username)) {
-                        return true;
-                    }
+        try {
+            // Leggi l'intero file in una stringa
+            String content = new String(Files.readAllBytes(Paths.get(user_path)), StandardCharsets.UTF_8);
+
+            // Controlla se la stringa è vuota
+            if (content.isEmpty()) {
+                // Il file è vuoto, restituisci un valore predefinito o crea un array JSON vuoto
+                return false;
+            }
+
+            // Parsa la stringa JSON utilizzando JsonParser
+            JsonArray jsonArray = JsonParser.parseString(content).getAsJsonArray();
+
+            // Itera su ogni elemento dell'array JSON
+            for (JsonElement element : jsonArray) {
+                JsonObject jsonObject = element.getAsJsonObject();
+
+                // Estrai il nome utente dall'oggetto JSON
+                String jsonUsername = jsonObject.get("username").getAsString();
+
+                // Verifica se l'utente corrente è quello cercato
+                if (jsonUsername.equals(username)) {
+                    return true;
                 }
-            } finally {
-                // Rilascia il lock di lettura
-                //lock.readLock().unlock();
             }
+        } finally {
+            // Rilascia il lock di lettura
+            //lock.readLock().unlock();
         }
     
         return false;
@@ -220,57 +240,51 @@ public class AuthenticationService {
      * @throws IOException In caso di errori durante la lettura del file JSON.
      */
     private User getUserFromFile(String username) throws IOException {
-        // Sincronizzazione sull'oggetto lock per garantire l'accesso sicuro alle risorse condivise
+        // Il file viene sostituito in modo atomico dai salvataggi, per cui la lettura non richiede il lock
         //lock.readLock().lock();
-        synchronized (lock) {
-            try (JsonReader reader = new JsonReader(new FileReader(user_path))) {
-                // Parsa il contenuto del file JSON in un oggetto JsonElement
-                JsonElement jsonElement = JsonParser.parseReader(reader);
-    
-                // Verifica se il JsonElement rappresenta un array JSON
-                if (jsonElement.isJsonArray()) {
-                    // Ottiene l'array JSON
-                    JsonArray array = jsonElement.getAsJsonArray();
-    
-                    // Itera su ogni elemento dell'array
-                    for (JsonElement element : array) {
-                        // Ottiene l'oggetto JSON per ciascun elemento
-                        JsonObject jsonObject = element.getAsJsonObject();
-                        // Estrae il nome utente dall'oggetto JSON
-                        String name = jsonObject.get("username").getAsString();
-    
-                        // Verifica se l'utente corrente è quello cercato
-                        if (username.equals(name)) {
-                            // Estrae le altre informazioni dell'utente solo se l'username corrisponde
-                            String password = jsonObject.get("password").getAsString();
-                            int number_review = jsonObject.get("number_review").getAsInt();
-                            String badge = null;
-                            Date badgeDate = null;
-    
-                            // Verifica se l'oggetto JSON contiene l'attributo "badge"
-                            if (jsonObject.has("badge")) {
-                                // Estrai le informazioni sul badge se presente
-                                JsonObject badgeObject = jsonObject.getAsJsonObject("badge");
-                                badge = badgeObject.get("level").getAsString();
-                                // Estrae e converte la data del badge
-                                String dateString = badgeObject.get("date").getAsString();
-                                SimpleDateFormat formatter = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US);
-                                badgeDate = formatter.parse(dateString);
-                            }
-                            // Restituisce un nuovo oggetto User con le informazioni estratte
-                            return new User(name, password, new Badge(Level.valueOf(badge), badgeDate), number_review);
+        try (JsonReader reader = new JsonReader(new FileReader(user_path, StandardCharsets.UTF_8))) {
+            // Parsa il contenuto del file JSON in un oggetto JsonElement
+            JsonElement jsonElement = JsonParser.parseReader(reader);
+
+            // Verifica se il JsonElement rappresenta un array JSON
+            if (jsonElement.isJsonArray()) {
+                // Ottiene l'array JSON
+                JsonArray array = jsonElement.getAsJsonArray();
+
+                // Itera su ogni elemento dell'array
+                for (JsonElement element : array) {
+                    // Ottiene l'oggetto JSON per ciascun elemento
+                    JsonObject jsonObject = element.getAsJsonObject();
+                    // Estrae il nome utente dall'oggetto JSON
+                    String name = jsonObject.get("username").getAsString();
+
+                    // Verifica se l'utente corrente è quello cercato
+                    if (username.equals(name)) {
+                        // Estrae le altre informazioni dell'utente solo se l'username corrisponde
+                        String password = jsonObject.get("password").getAsString();
+                        int number_review = jsonObject.get("number_review").getAsInt();
+                        String badge = null;
+                        String badgeDate = null;
+
+                        // Verifica se l'oggetto JSON contiene l'attributo "badge"
+                        if (jsonObject.has("badge")) {
+                            // Estrai le informazioni sul badge se presente
+                            JsonObject badgeObject = jsonObject.getAsJsonObject("badge");
+                            badge = badgeObject.get("level").getAsString();
+                            // La data del badge è già nel formato dei badge e viene mantenuta senza conversioni
+                            badgeDate = badgeObject.get("date").getAsString();
                         }
+                        // Restituisce un nuovo oggetto User con le informazioni estratte
+                        return new User(name, password, new Badge(Level.valueOf(badge), badgeDate), number_review);
                     }
                 }
-            } catch (ParseException e) {
-                e.printStackTrace();
             }
-            finally{
-                //lock.readUnlock().lock();
-            }
-            // Restituisce null se l'utente non è stato trovato
-            return null;
         }
+        finally{
+            //lock.readUnlock().lock();
+        }
+        // Restituisce null se l'utente non è stato trovato
+        return null;
     }
     
     
@@ -286,64 +300,62 @@ public class AuthenticationService {
             System.out.println("No data to save");
             return;
         }
+        // Il lock serializza soltanto i salvataggi: login e registrazioni leggono la cache o il file,
+        // che viene sostituito in modo atomico, per cui nessun lettore attende la scrittura
         synchronized(lock){
+            long start = System.nanoTime();
+            flushReaders.beginFlush();
+            // Fase 1: copia gli utenti da salvare, così le registrazioni concorrenti non alterano il salvataggio
+            Map<Integer, User> pending = new HashMap<>(UsersCache);
+            long snapshotEnd = System.nanoTime();
             try {
-                // Crea un oggetto Gson
-                Gson gson = new GsonBuilder().setPrettyPrinting().create();;
-
+                // Fase 2: lettura, serializzazione e scrittura del file, senza bloccare alcun lettore
                 // Legge il file JSON
-                try (Reader reader = new FileReader(users_file)) {
+                List<User> usersModifiable;
+                try (Reader reader = new FileReader(users_file, StandardCharsets.UTF_8)) {
                     // Converte il file JSON in una lista di utenti
                     //List<User> users = gson.fromJson(reader, new TypeToken<List<User>>(){}.getType());
+                    User[] deserialized = GSON.fromJson(reader, User[].class);
+                    usersModifiable = new ArrayList<>(Arrays.asList(deserialized));
+                }
 
-                    List<User> users;
-                    User[] deserialized = gson.fromJson(reader, User[].class);
-                    users = Arrays.asList(deserialized);
-                    List<User> usersModifiable = new ArrayList<>(users);
-
-                    // Aggiorna le informazioni degli utenti con quelle presenti nella cache
-                    for (Map.Entry<String, User> entry : UsersCache.entrySet()) {
-                        String username = entry.getKey();
-                        User cachedUser = entry.getValue();
-
-                        boolean found = false;
-                        // Trova l'utente corrispondente nella lista
-                        for (int i = 0; i < usersModifiable.size(); i++) {
-                            //System.out.println("Dentro for user");
-                            if (usersModifiable.get(i).getUsername().equals(username)) {
-                                // Aggiorna le informazioni dell'utente con quelle presenti nella cache
-                                usersModifiable.set(i, cachedUser);
-                                found = true;
-                                break;
-                            }
-                        }
+                // Aggiorna le informazioni degli utenti con quelle presenti nella copia della cache
+                for (User cachedUser : pending.values()) {
+                    String username = cachedUser.getUsername();
 
-                        // Se l'utente non è stato trovato nella lista, lo aggiunge
-                        if (!found) {
-                            System.out.println("Aggiungendo utente alla lista: " + username);
-                            usersModifiable.add(cachedUser);
+                    boolean found = false;
+                    // Trova l'utente corrispondente nella lista
+                    for (int i = 0; i < usersModifiable.size(); i++) {
+                        if (usersModifiable.get(i).getUsername().equals(username)) {
+                            // Aggiorna le informazioni dell'utente con quelle presenti nella cache
+                            usersModifiable.set(i, cachedUser);
+                            found = true;
+                            break;
                         }
                     }
-                    // Converte la lista di utenti aggiornata in una stringa JSON
-                    String json = gson.toJson(usersModifiable);
-
-                    // Scrive la stringa JSON nel file
-                    try (FileWriter writer = new FileWriter(users_file)) {
-                        //System.out.println("Scrivendo nel file JSON");
-                        writer.write(json);
-                    } catch (IOException e) {
-                        System.out.println("Errore durante la scrittura nel file: " + e.getMessage());
-                        e.printStackTrace();
+
+                    // Se l'utente non è stato trovato nella lista, lo aggiunge
+                    if (!found) {
+                        System.out.println("Aggiungendo utente alla lista: " + username);
+                        usersModifiable.add(cachedUser);
                     }
+                }
+
+                // Converte la lista di utenti aggiornata in una stringa JSON e sostituisce il file
+                AtomicFileWriter.write(users_file, GSON.toJson(usersModifiable));
 
-                // Svuota la cache
-                UsersCache.clear();
-                } catch (IOException e) {
-                    System.out.println("Errore durante la lettura del file: " + e.getMessage());
-                    e.printStackTrace();
+                // Rimuove dalla cache solo gli utenti salvati: quelli registrati durante il salvataggio restano in cache
+                for (Map.Entry<Integer, User> entry : pending.entrySet()) {
+                    UsersCache.remove(entry.getKey(), entry.getValue());
                 }
+            } catch (IOException e) {
+                System.out.println("Errore durante l'aggiornamento del file: " + e.getMessage());
+                e.printStackTrace();
             } finally {
                 //lock.writeLock().unlock();
+                long end = System.nanoTime();
+                System.out.printf("Update user timing: snapshot %d ms, file I/O %d ms, %s%n",
+                        (snapshotEnd - start) / 1_000_000, (end - snapshotEnd) / 1_000_000, flushReaders.endFlush());
             }
         }
     }
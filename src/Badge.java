@@ -1,26 +1,25 @@
 import java.io.Serializable;
-import java.util.Date;
-import java.text.SimpleDateFormat;
 
 /**
  * Classe che rappresenta un badge associato a un determinato livello e data di riscatto.
+ * Il badge è immutabile: un cambio di livello crea un nuovo badge, così chi lo legge o lo salva
+ * vede sempre livello e data coerenti.
  * Implementa l'interfaccia Serializable per consentire la serializzazione dell'oggetto.
  */
 public class Badge implements Serializable {
 
-    private Level level;
-    private String date;
+    private final Level level;
+    private final String date;
 
     /**
      * Costruttore che inizializza un oggetto Badge con un livello specificato e una data specificata.
      *
      * @param level Livello associato al badge.
-     * @param date  Data di riscatto del badge.
+     * @param date  Data di riscatto del badge, nel formato dei badge (vedi DateFormats.BADGE).
      */
-    public Badge(Level level, Date date) {
+    public Badge(Level level, String date) {
         this.level = level;
-        SimpleDateFormat format = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy");
-        this.date = format.format(date);
+        this.date = date;
     }
 
     /**
@@ -30,7 +29,7 @@ public class Badge implements Serializable {
      */
     public Badge(Level level) {
         this.level = level;
-        date = new Date().toString();
+        date = DateFormats.format(DateFormats.BADGE, System.currentTimeMillis());
     }
 
     /**
@@ -67,17 +66,4 @@ public class Badge implements Serializable {
     public Level getLevel() {
         return level;
     }
-
-    /**
-     * Imposta il livello associato al badge con il valore passato come parametro.
-     *
-     * @param level Nuovo livello da associare al badge.
-     */
-    public void setLevel(Level level) {
-        this.level = level;
-        Date currentDate = new Date();
-        // Formatta la data corrente
-        SimpleDateFormat format = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy");
-        this.date = format.format(currentDate);
-    }
 }
@@ -0,0 +1,129 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versione immutabile del catalogo degli hotel caricati in memoria, suddivisi per città.
+ * Ogni modifica produce una nuova versione che condivide con la precedente le città non modificate,
+ * per cui un lettore che ha ottenuto una versione ne vede sempre lo stesso contenuto.
+ */
+public final class CatalogSnapshot {
+
+    /** Catalogo vuoto, senza città caricate */
+    public static final CatalogSnapshot EMPTY = new CatalogSnapshot(Collections.emptyMap());
+
+    /** Hotel di ogni città, indicizzati per nome della città in minuscolo */
+    private final Map<String, List<Hotel>> cities;
+
+    /**
+     * Costruttore privato: le nuove versioni si ottengono da quelle esistenti.
+     *
+     * @param cities Mappa non modificabile città - hotel.
+     */
+    private CatalogSnapshot(Map<String, List<Hotel>> cities) {
+        this.cities = cities;
+    }
+
+    /**
+     * Restituisce gli hotel di una città.
+     *
+     * @param cityKey Nome della città in minuscolo.
+     * @return        Lista non modificabile degli hotel, o null se la città non è caricata.
+     */
+    public List<Hotel> getCity(String cityKey) {
+        return cities.get(cityKey);
+    }
+
+    /**
+     * Restituisce gli hotel di tutte le città caricate.
+     *
+     * @return Le liste non modificabili degli hotel di ogni città.
+     */
+    public Collection<List<Hotel>> getCities() {
+        return cities.values();
+    }
+
+    /**
+     * Restituisce una nuova versione del catalogo con la città aggiunta, se non già presente.
+     *
+     * @param cityKey Nome della città in minuscolo.
+     * @param hotels  Hotel della città.
+     * @return        La nuova versione, o questa versione se la città era già presente.
+     */
+    public CatalogSnapshot withCity(String cityKey, List<Hotel> hotels) {
+        if (cities.containsKey(cityKey)) {
+            return this;
+        }
+        Map<String, List<Hotel>> next = new HashMap<>(cities);
+        next.put(cityKey, Collections.unmodifiableList(new ArrayList<>(hotels)));
+        return new CatalogSnapshot(Collections.unmodifiableMap(next));
+    }
+
+    /**
+     * Restituisce una nuova versione del catalogo in cui l'hotel con lo stesso ID è sostituito da quello indicato.
+     *
+     * @param cityKey Nome della città dell'hotel in minuscolo.
+     * @param hotel   Nuova versione dell'hotel.
+     * @return        La nuova versione, o questa versione se la città o l'hotel non sono presenti.
+     */
+    public CatalogSnapshot withHotel(String cityKey, Hotel hotel) {
+        List<Hotel> hotels = cities.get(cityKey);
+        if (hotels == null) {
+            return this;
+        }
+        List<Hotel> nextHotels = new ArrayList<>(hotels);
+        boolean found = false;
+        for (int i = 0; i < nextHotels.size() && !found; i++) {
+            if (nextHotels.get(i).getId() == hotel.getId()) {
+                nextHotels.set(i, hotel);
+                found = true;
+            }
+        }
+        if (!found) {
+            return this;
+        }
+        return withHotels(cityKey, nextHotels);
+    }
+
+    /**
+     * Restituisce una nuova versione del catalogo in cui alcuni hotel di una città sono sostituiti.
+     * Un hotel viene sostituito solo se il catalogo contiene ancora esattamente la versione indicata
+     * (confronto per identità): una versione più recente pubblicata nel frattempo non viene sovrascritta.
+     *
+     * @param cityKey       Nome della città in minuscolo.
+     * @param replacements  Per ogni versione da sostituire, la versione che la sostituisce.
+     * @return              La nuova versione, o questa versione se nessun hotel viene sostituito.
+     */
+    public CatalogSnapshot withReplaced(String cityKey, Map<Hotel, Hotel> replacements) {
+        List<Hotel> hotels = cities.get(cityKey);
+        if (hotels == null) {
+            return this;
+        }
+        List<Hotel> nextHotels = new ArrayList<>(hotels);
+        boolean found = false;
+        for (int i = 0; i < nextHotels.size(); i++) {
+            Hotel replacement = replacements.get(nextHotels.get(i));
+            if (replacement != null) {
+                nextHotels.set(i, replacement);
+                found = true;
+            }
+        }
+        return found ? withHotels(cityKey, nextHotels) : this;
+    }
+
+    /**
+     * Restituisce una nuova versione del catalogo con la lista degli hotel di una città sostituita.
+     *
+     * @param cityKey Nome della città in minuscolo.
+     * @param hotels  Nuova lista degli hotel della città, non più modificata dal chiamante.
+     * @return        La nuova versione.
+     */
+    private CatalogSnapshot withHotels(String cityKey, List<Hotel> hotels) {
+        Map<String, List<Hotel>> next = new HashMap<>(cities);
+        next.put(cityKey, Collections.unmodifiableList(hotels));
+        return new CatalogSnapshot(Collections.unmodifiableMap(next));
+    }
+}
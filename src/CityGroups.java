@@ -0,0 +1,39 @@
+import java.util.Locale;
+
+/**
+ * Calcola il gruppo multicast delle notifiche di una città.
+ * L'indirizzo viene derivato in modo deterministico dal gruppo base (UDP_addr) e dal nome della città,
+ * mantenendo i primi due byte del gruppo base e ricavando gli ultimi due dall'hash del nome:
+ * server e client calcolano così lo stesso indirizzo senza doverlo comunicare.
+ * Città diverse possono condividere un gruppo, per cui il client filtra comunque le notifiche per città.
+ */
+public final class CityGroups {
+
+    /**
+     * Costruttore privato: la classe contiene solo metodi statici.
+     */
+    private CityGroups() {
+    }
+
+    /**
+     * Restituisce l'indirizzo del gruppo multicast di una città.
+     *
+     * @param baseAddr Indirizzo del gruppo base, in forma a.b.c.d.
+     * @param city     Nome della città, senza distinzione tra maiuscole e minuscole.
+     * @return         L'indirizzo del gruppo della città, diverso dal gruppo base.
+     */
+    public static String groupFor(String baseAddr, String city) {
+        String[] octets = baseAddr.trim().split("\\.");
+        if (octets.length != 4) {
+            throw new IllegalArgumentException("Invalid multicast address: " + baseAddr);
+        }
+        // String.hashCode è definito dalla specifica, per cui il risultato è lo stesso su ogni JVM
+        int hash = city.toLowerCase(Locale.ROOT).hashCode() & 0x7fffffff;
+        int base = (Integer.parseInt(octets[2]) << 8) | Integer.parseInt(octets[3]);
+        int low = 1 + hash % 0xfffe;
+        if (low == base) {
+            low = low % 0xfffe + 1;
+        }
+        return octets[0] + "." + octets[1] + "." + (low >> 8) + "." + (low & 0xff);
+    }
+}
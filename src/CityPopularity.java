@@ -0,0 +1,56 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Popolarità recente di una città: numero di richieste ricevute, in cui ogni richiesta pesa la metà
+ * dopo ogni HALF_LIFE_MS. Le città richieste di recente prevalgono così su quelle richieste molte volte
+ * in passato. Il valore viene salvato su file (vedi HotelService), per ordinare il precaricamento
+ * anche dopo un riavvio.
+ */
+public class CityPopularity {
+
+    /** Tempo dopo il quale il peso di una richiesta si dimezza */
+    private static final long HALF_LIFE_MS = TimeUnit.MINUTES.toMillis(30);
+
+    /** Numero pesato di richieste all'istante updated */
+    private double score;
+    /** Istante dell'ultimo aggiornamento in millisecondi */
+    private long updated;
+
+    /**
+     * Costruttore di una città senza richieste.
+     */
+    public CityPopularity() {
+    }
+
+    /**
+     * Costruttore che ripristina una popolarità salvata.
+     *
+     * @param score   Numero pesato di richieste all'istante del salvataggio.
+     * @param updated Istante del salvataggio in millisecondi.
+     */
+    public CityPopularity(double score, long updated) {
+        this.score = score;
+        this.updated = updated;
+    }
+
+    /**
+     * Registra una richiesta.
+     *
+     * @param now Istante della richiesta in millisecondi.
+     */
+    public synchronized void hit(long now) {
+        score = scoreAt(now) + 1;
+        updated = Math.max(updated, now);
+    }
+
+    /**
+     * Restituisce il numero pesato di richieste a un istante dato.
+     *
+     * @param now Istante di riferimento in millisecondi.
+     * @return    Il numero pesato di richieste.
+     */
+    public synchronized double scoreAt(long now) {
+        long elapsed = Math.max(0, now - updated);
+        return score * Math.pow(0.5, (double) elapsed / HALF_LIFE_MS);
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Classifica incrementale degli hotel di una città.
+ * Gli hotel sono mantenuti in un albero ordinato per score, per cui l'aggiornamento di un hotel costa
+ * O(log n) e il confronto delle prime N posizioni prima e dopo l'aggiornamento costa O(N).
+ */
+public class CityRanking {
+
+    /** Posizione di un hotel nell'albero, con lo score al momento dell'inserimento. */
+    private static final class Entry {
+        private final Hotel hotel;
+        private final float score;
+
+        private Entry(Hotel hotel, float score) {
+            this.hotel = hotel;
+            this.score = score;
+        }
+    }
+
+    /** Posizione di un hotel nella classifica salvata su file, ripristinata al riavvio del server. */
+    public static final class Saved {
+        private final int id;
+        private final float score;
+
+        private Saved(int id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    /** Ordine della classifica: score decrescente e, a parità di score, ID crescente */
+    private static final Comparator<Entry> ORDER = Comparator.comparingDouble((Entry e) -> e.score).reversed()
+            .thenComparingInt(e -> e.hotel.getId());
+
+    private final String city;
+    private final int topN;
+    private final TreeSet<Entry> order = new TreeSet<>(ORDER);
+    private final Map<Integer, Entry> entries = new HashMap<>();
+
+    /**
+     * Costruttore della classe CityRanking.
+     *
+     * @param city  Città della classifica.
+     * @param topN  Numero di posizioni di cui notificare i cambiamenti.
+     */
+    public CityRanking(String city, int topN) {
+        this.city = city;
+        this.topN = topN;
+    }
+
+    /**
+     * Aggiorna la posizione degli hotel indicati in base al loro score attuale e restituisce
+     * i cambiamenti avvenuti nelle prime N posizioni.
+     *
+     * @param hotels  Hotel della città di cui è cambiato lo score.
+     * @return        Le posizioni, tra le prime N, occupate ora da un hotel diverso.
+     */
+    public synchronized List<RankChange> update(Collection<Hotel> hotels) {
+        List<Integer> before = topIds();
+
+        for (Hotel hotel : hotels) {
+            Entry old = entries.get(hotel.getId());
+            if (old != null && old.score == hotel.getScore()) {
+                continue;
+            }
+            if (old != null) {
+                order.remove(old);
+            }
+            Entry entry = new Entry(hotel, hotel.getScore());
+            order.add(entry);
+            entries.put(hotel.getId(), entry);
+        }
+
+        // Confronta le prime N posizioni con quelle precedenti all'aggiornamento
+        List<RankChange> changes = new ArrayList<>();
+        Iterator<Entry> it = order.iterator();
+        for (int position = 0; position < topN && it.hasNext(); position++) {
+            Entry entry = it.next();
+            if (position >= before.size() || before.get(position) != entry.hotel.getId()) {
+                changes.add(new RankChange(city, position + 1, entry.hotel));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Ripristina la classifica salvata, senza ricalcolare gli score e senza produrre cambiamenti.
+     * Gli hotel salvati che non sono più presenti vengono ignorati; quelli nuovi vengono inseriti
+     * dal successivo update.
+     *
+     * @param saved   La classifica salvata, in ordine.
+     * @param hotels  Gli hotel attuali della città.
+     */
+    public synchronized void restore(List<Saved> saved, Collection<Hotel> hotels) {
+        Map<Integer, Hotel> byId = new HashMap<>();
+        for (Hotel hotel : hotels) {
+            byId.put(hotel.getId(), hotel);
+        }
+        for (Saved position : saved) {
+            Hotel hotel = byId.get(position.id);
+            if (hotel != null && !entries.containsKey(position.id)) {
+                Entry entry = new Entry(hotel, position.score);
+                order.add(entry);
+                entries.put(position.id, entry);
+            }
+        }
+    }
+
+    /**
+     * Restituisce la classifica nella forma salvata su file.
+     *
+     * @return Gli hotel in ordine di classifica, con il loro score.
+     */
+    public synchronized List<Saved> save() {
+        List<Saved> saved = new ArrayList<>(order.size());
+        for (Entry entry : order) {
+            saved.add(new Saved(entry.hotel.getId(), entry.score));
+        }
+        return saved;
+    }
+
+    /**
+     * Restituisce gli ID degli hotel nelle prime N posizioni.
+     *
+     * @return Lista degli ID in ordine di classifica.
+     */
+    private List<Integer> topIds() {
+        List<Integer> ids = new ArrayList<>(topN);
+        Iterator<Entry> it = order.iterator();
+        while (ids.size() < topN && it.hasNext()) {
+            ids.add(it.next().hotel.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Restituisce il numero di hotel in classifica.
+     *
+     * @return Numero di hotel in classifica.
+     */
+    public synchronized int size() {
+        return order.size();
+    }
+
+    /**
+     * Restituisce la città della classifica.
+     *
+     * @return Città della classifica.
+     */
+    public String getCity() {
+        return city;
+    }
+}
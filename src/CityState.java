@@ -0,0 +1,11 @@
+/**
+ * Enum che rappresenta lo stato di caricamento in memoria degli hotel di una città.
+ */
+public enum CityState {
+    /** Gli hotel della città non sono ancora stati letti dal file. */
+    NOT_LOADED,
+    /** La lettura degli hotel della città è in corso. */
+    LOADING,
+    /** Gli hotel della città sono disponibili in memoria. */
+    LOADED
+}
@@ -3,6 +3,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -19,6 +20,10 @@ public class ClientHandler implements Runnable {
     private final AuthenticationService authservice;
     /** Servizio di gestione degli hotel */
     private final HotelService hotelService;
+    /** Pipeline attraverso cui vengono applicate le modifiche allo stato del server */
+    private final MutationPipeline pipeline;
+    /** Numero di recensioni mostrate per ogni hotel e per ogni pagina */
+    private final int review_page_size;
     /** Codici Unicode per emoji */
     String hand = "\uD83D\uDC4B";
     String soap = "\uD83E\uDDFC";
@@ -29,6 +34,8 @@ public class ClientHandler implements Runnable {
     String tick = "\u2705";        
     String Hotel = "\uD83C\uDFE8";  
     String City = "\uD83C\uDFD9";
+    /** Inizio della riga che chiude i risultati di una ricerca con la versione della città, usata dalle cache dei client */
+    static final String VERSION_MARKER = "#version ";
 
     // Logger per la registrazione degli eventi
     // private final Logger LOGGER = Logger.getLogger(ClientHandler.class.getName());
@@ -39,11 +46,15 @@ public class ClientHandler implements Runnable {
      * @param clientSocket  Il socket del client.
      * @param authService   Servizio di autenticazione.
      * @param hotelService  Servizio degli hotel.
+     * @param pipeline      Pipeline delle modifiche allo stato del server.
+     * @param review_page_size Numero di recensioni mostrate per ogni hotel e per ogni pagina.
      */
-    public ClientHandler(Socket clientSocket, AuthenticationService authService, HotelService hotelService) {
+    public ClientHandler(Socket clientSocket, AuthenticationService authService, HotelService hotelService, MutationPipeline pipeline, int review_page_size) {
         this.clientSocket = clientSocket;
         this.authservice = authService;
         this.hotelService = hotelService;
+        this.pipeline = pipeline;
+        this.review_page_size = review_page_size;
     }
 
     /**
@@ -142,8 +153,8 @@ public class ClientHandler implements Runnable {
 
                 if (password.length() >= 8 && specialCharacterPattern.matcher(password).find()) {
                     validPassword = true;
-                    // Usa metodo del servizio di autenticazione per registrare
-                    authservice.signup(user, username, password);
+                    // Registra l'utente attraverso la pipeline delle modifiche
+                    pipeline.submitSignup(username, password);
                     printProtocol("Signup succeeded", out);
 
                 } else {
@@ -203,10 +214,12 @@ public class ClientHandler implements Runnable {
             String hotel = in.readLine();
             printProtocol("Insert City " + City, out);
             String city = in.readLine();
+            // La versione viene letta prima dell'hotel: il contenuto inviato è almeno aggiornato quanto la versione
+            long version = hotelService.getCityVersion(city);
             // (sa metodo del servizio di gestione degli hotel per la ricerca
             h = hotelService.searchHotel(hotel, city);
             if (h != null) {
-                printProtocol(h.printPretty(), out);
+                printProtocol(h.printPretty(review_page_size) + "\n" + versionLine(version, h.getCity()), out);
             } else printProtocol("Hotel " + "\"" + hotel + "\"" + " in " + city + " not found", out);
         } catch (IOException e) {
             e.printStackTrace();
@@ -225,12 +238,15 @@ public class ClientHandler implements Runnable {
             printProtocol("Insert City " +  City, out);
             // controllo con enum città
             String city = in.readLine();
+            // La versione viene letta prima degli hotel: il contenuto inviato è almeno aggiornato quanto la versione
+            long version = hotelService.getCityVersion(city);
             // Usa metodo del servizio di gestione degli hotel per la ricerca
             hotel_list = hotelService.searchAllHotels(city);
             if (!hotel_list.isEmpty()) {
                 for (Hotel hotel : hotel_list) {
-                    out.println(hotel.printPretty());
+                    out.println(hotel.printPretty(review_page_size));
                 }
+                out.println(versionLine(version, hotel_list.get(0).getCity()));
                 out.println("");
             } else printProtocol(city + " not found", out);
         } catch (IOException e) {
@@ -238,6 +254,60 @@ public class ClientHandler implements Runnable {
         }
     }
 
+    /**
+     * Restituisce la riga con la versione di una città, nel formato "#version versione città".
+     * La versione va letta prima del contenuto: HotelService.writeReview la incrementa dopo aver pubblicato
+     * la recensione, per cui il contenuto letto dopo include tutte le recensioni della versione e un client
+     * non può associare a una versione un contenuto più vecchio.
+     *
+     * @param version  La versione della città, letta prima del contenuto.
+     * @param city     La città.
+     * @return         La riga della versione.
+     */
+    private static String versionLine(long version, String city) {
+        return VERSION_MARKER + version + " " + city;
+    }
+
+    /**
+     * Gestisce la lettura delle recensioni precedenti di un hotel a partire da un cursore.
+     *
+     * @param out  Oggetto PrintWriter per inviare messaggi al client.
+     * @param in   Oggetto BufferedReader per leggere input dal client.
+     */
+    private void showReviews(PrintWriter out, BufferedReader in) {
+        try {
+            printProtocol("Insert review cursor", out);
+            String cursor = in.readLine();
+            if (cursor == null) {
+                // Il client ha chiuso la connessione: la sessione termina nel ciclo principale
+                return;
+            }
+            cursor = cursor.trim();
+            // Il cursore ha il formato "id:posizione", come mostrato in fondo alle recensioni di un hotel
+            String[] parts = cursor.split(":");
+            int id;
+            int before;
+            try {
+                if (parts.length != 2) {
+                    throw new NumberFormatException(cursor);
+                }
+                id = Integer.parseInt(parts[0]);
+                before = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                printProtocol("Invalid cursor", out);
+                return;
+            }
+            Hotel h = hotelService.searchHotelById(id);
+            if (h == null) {
+                printProtocol("Hotel not found", out);
+                return;
+            }
+            printProtocol(h.printReviews(before, review_page_size), out);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Gestisce l'inserimento di una recensione per un hotel.
      *
@@ -327,8 +397,8 @@ public class ClientHandler implements Runnable {
             
 
             Review r = new Review(user.getUsername(), h.getName(), rate, new Ratings(floatRate[0], floatRate[1], floatRate[2], floatRate[3]));
-            hotelService.writeReview(user, h, r);
-            user.setNumber_review();
+            // Applica la recensione e aggiorna il numero di recensioni dell'utente attraverso la pipeline delle modifiche
+            pipeline.submitReview(user, h, r);
             printProtocol("Review posted " + tick, out);
         } catch (IOException e) {
             e.printStackTrace();
@@ -342,13 +412,21 @@ public class ClientHandler implements Runnable {
     public void run() {
         User user = null;
 
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-             PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true, StandardCharsets.UTF_8)) {
 
             int exit = 0;
 
             while (exit == 0) {
                 String actionStr = in.readLine();
+                if (actionStr == null) {
+                    // Il client ha chiuso la connessione: termina la sessione come con il comando di uscita
+                    if (user != null) {
+                        logout(user, out);
+                        user = null;
+                    }
+                    break;
+                }
                 int action = Integer.parseInt(actionStr.trim()); // Converte la stringa in un intero
 
                 switch (action) {
@@ -382,6 +460,9 @@ public class ClientHandler implements Runnable {
                         } else printProtocol("Goodbye visitor " + hand, out);
                         exit = 1;
                         break;
+                    case 9: // show older reviews
+                        showReviews(out, in);
+                        break;
                     default:
                         throw new IllegalStateException("Unexpected value: " + action);
                 }
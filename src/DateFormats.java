@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Formati delle date usati nel sistema HOTELIER. I DateTimeFormatter sono immutabili e thread-safe,
+ * per cui vengono creati una sola volta e condivisi, invece di creare un SimpleDateFormat ad ogni uso.
+ * Le date sono rappresentate come millisecondi dall'epoch.
+ */
+public final class DateFormats {
+
+    /** Formato delle date delle recensioni nel file degli hotel */
+    public static final DateTimeFormatter REVIEW_FILE = new DateTimeFormatterBuilder()
+            .parseCaseInsensitive()
+            .appendPattern("MMM dd, yyyy, h:mm:ss a")
+            .toFormatter(Locale.US)
+            .withZone(ZoneId.systemDefault());
+    /** Formato delle date delle recensioni mostrate al client */
+    public static final DateTimeFormatter REVIEW_DISPLAY = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+    /** Formato della data di riscatto dei badge */
+    public static final DateTimeFormatter BADGE = DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US)
+            .withZone(ZoneId.systemDefault());
+
+    /**
+     * Costruttore privato: la classe contiene solo metodi statici.
+     */
+    private DateFormats() {
+    }
+
+    /**
+     * Formatta una data con il formato indicato.
+     *
+     * @param format Formato da usare.
+     * @param millis Data in millisecondi dall'epoch.
+     * @return       La data formattata.
+     */
+    public static String format(DateTimeFormatter format, long millis) {
+        return format.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * Legge una data con il formato indicato.
+     *
+     * @param format Formato da usare.
+     * @param text   Testo da leggere.
+     * @return       La data in millisecondi dall'epoch.
+     * @throws ParseException Se il testo non rispetta il formato.
+     */
+    public static long parse(DateTimeFormatter format, String text) throws ParseException {
+        try {
+            return Instant.from(format.parse(text)).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new ParseException(e.getMessage(), e.getErrorIndex());
+        }
+    }
+
+    /**
+     * Adattatore Gson che salva la data di una recensione nel formato del file degli hotel.
+     */
+    public static final class ReviewDateAdapter extends TypeAdapter<Long> {
+        @Override
+        public void write(JsonWriter out, Long millis) throws IOException {
+            out.value(format(REVIEW_FILE, millis));
+        }
+
+        @Override
+        public Long read(JsonReader in) throws IOException {
+            try {
+                return parse(REVIEW_FILE, in.nextString());
+            } catch (ParseException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
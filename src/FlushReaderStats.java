@@ -0,0 +1,65 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Misura quanto restano bloccati i lettori durante un salvataggio: registra la durata delle letture
+ * (ricerche, login) iniziate mentre il salvataggio è in corso, che verrebbe allungata da un lock tenuto
+ * durante l'I/O. Il servizio delimita ogni salvataggio con beginFlush ed endFlush, che restituisce il resoconto.
+ * Si assume un solo salvataggio alla volta, come garantito dal lock dei salvataggi.
+ */
+public class FlushReaderStats {
+
+    /** Inizio di una lettura non misurata perché non è in corso un salvataggio */
+    private static final long NOT_MEASURED = Long.MIN_VALUE;
+
+    private volatile boolean flushing;
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Segna l'inizio di un salvataggio, azzerando le misure del salvataggio precedente.
+     */
+    public void beginFlush() {
+        reads.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+        flushing = true;
+    }
+
+    /**
+     * Segna l'inizio di una lettura.
+     *
+     * @return L'istante di inizio in nanosecondi, NOT_MEASURED se non è in corso un salvataggio.
+     */
+    public long readStarted() {
+        return flushing ? System.nanoTime() : NOT_MEASURED;
+    }
+
+    /**
+     * Segna la fine di una lettura, registrandone la durata se era iniziata durante un salvataggio.
+     *
+     * @param start Il valore restituito da readStarted.
+     */
+    public void readEnded(long start) {
+        if (start == NOT_MEASURED) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        reads.increment();
+        totalNanos.add(elapsed);
+        maxNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    /**
+     * Segna la fine di un salvataggio.
+     *
+     * @return Il resoconto delle letture eseguite durante il salvataggio: numero, durata media e massima.
+     */
+    public String endFlush() {
+        flushing = false;
+        long count = reads.sum();
+        double avg = count == 0 ? 0 : totalNanos.sum() / 1e6 / count;
+        return String.format("readers during flush: %d reads, avg %.3f ms, max %.3f ms", count, avg, maxNanos.get() / 1e6);
+    }
+}
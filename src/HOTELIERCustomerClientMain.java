@@ -1,6 +1,8 @@
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Properties;
 
 /**
@@ -18,6 +20,10 @@ public class HOTELIERCustomerClientMain {
     private static String UDP_port;
     /** L'indirizzo UDP per la ricezione di notifiche automatiche. */
     private static String UDP_addr;
+    /** La porta del canale TCP di push delle notifiche, 0 per usare il multicast UDP. */
+    private static int push_port;
+    /** Durata in millisecondi dei risultati delle ricerche nella cache del client, 0 per disattivarla. */
+    private static long cache_ttl_ms;
 
     /**
      * Legge le configurazioni dal file di configurazione e inizializza le variabili di connessione del client.
@@ -31,12 +37,16 @@ public class HOTELIERCustomerClientMain {
         server_address = prop.getProperty("address");
         UDP_addr = prop.getProperty("UDP_addr");
         UDP_port = prop.getProperty("UDP_port");
+        push_port = Integer.parseInt(prop.getProperty("push_port", "0").trim());
+        cache_ttl_ms = Long.parseLong(prop.getProperty("cache_ttl_ms", "0").trim());
         input.close();
     }
 
     /**
      * Punto di ingresso principale per avviare il client Hotelier.
-     * @param args Gli argomenti della riga di comando (non utilizzati).
+     * Senza argomenti avvia il client interattivo; con degli argomenti esegue i comandi indicati
+     * senza interazione, scrivendo gli esiti come righe JSON (vedi HOTELIERHeadlessClient).
+     * @param args Gli argomenti della riga di comando: comandi, oppure --file percorso.
      */
     public static void main(String[] args) {
         try {
@@ -48,8 +58,20 @@ public class HOTELIERCustomerClientMain {
             System.exit(1);
         }
 
+        // Modalità non interattiva: esegue i comandi e termina con l'esito complessivo.
+        // Le righe JSON sono scritte in UTF-8 qualunque sia la codifica predefinita della macchina
+        if (args.length > 0) {
+            try {
+                System.exit(HOTELIERHeadlessClient.run(args, server_address, port,
+                        new PrintStream(System.out, true, StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                System.err.println("Connection Error: " + e.getMessage());
+                System.exit(2);
+            }
+        }
+
         // Crea istanza del servizio che gestisce il client
-        HOTELIERCustomerClientService clientService = new HOTELIERCustomerClientService(server_address, port, UDP_addr, UDP_port);
+        HOTELIERCustomerClientService clientService = new HOTELIERCustomerClientService(server_address, port, UDP_addr, UDP_port, push_port, cache_ttl_ms);
 
         try {
             clientService.begin();
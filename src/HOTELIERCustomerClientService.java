@@ -2,23 +2,47 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.net.DatagramPacket;
-import java.net.InetAddress;
-import java.net.MulticastSocket;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Classe che gestisce i servizi del cliente per Hotelier tramite connessione TCP e multicast UDP.
  */
 public class HOTELIERCustomerClientService {
 
-    /** Il socket multicast UDP per la ricezione di notifiche automatiche. */
-    private MulticastSocket multicastSocket;
+    /** Il listener dei gruppi multicast UDP per la ricezione di notifiche automatiche. */
+    private final NotificationListener listener;
+    /** Notifiche ricevute in attesa di essere stampate dal thread di stampa. */
+    private final BlockingQueue<String> notifications = new LinkedBlockingQueue<>();
+    /** Formato dell'istante di ricezione delle notifiche. */
+    private static final DateTimeFormatter NOTIFICATION_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    /** Thread che stampa le notifiche e thread che riceve quelle del canale di push, creati al primo login. */
+    private Thread displayThread;
+    private Thread pushThread;
+    /** Flag che indica se il canale di push deve restare connesso. */
+    private volatile boolean pushActive;
+    /** Ricompone le notifiche divise su più datagrammi e rileva quelli persi. */
+    private final NotificationAssembler assembler = new NotificationAssembler();
+    /** Città seguite, in minuscolo, con il numero di notifiche ricevute per ognuna: se è vuota si seguono tutte le città. */
+    private final Map<String, Long> subscriptions = new LinkedHashMap<>();
+    /** Numero di notifiche ricevute dal gruppo di tutte le città. */
+    private long allCitiesDelivered;
+    /** Formato di una notifica di cambiamento di classifica, da cui si ricava la città. */
+    private static final Pattern RANK_NOTIFICATION = Pattern.compile("ranked Hotel in (.+) is now ");
     /** Lo scanner per l'input dell'utente. */
     private final Scanner scanner = new Scanner(System.in);
     /** L'indirizzo del server a cui il client si connetterà. */
@@ -29,10 +53,21 @@ public class HOTELIERCustomerClientService {
     private final String UDP_port;
     /** L'indirizzo UDP per la ricezione di notifiche automatiche. */
     private final String UDP_addr;
+    /** La porta del canale TCP di push delle notifiche, 0 per usare il multicast UDP. */
+    private final int push_port;
+    /** Il socket del canale di push, chiuso al logout per interrompere la ricezione. */
+    private volatile Socket pushSocket;
+    /** Epoca del registro delle notifiche del server e numero dell'ultima notifica ricevuta tramite push. */
+    private long pushEpoch;
+    private long pushSeq = -1;
     /** Oggetto di blocco per la CLI. */
     private final Object CLILock = new Object();
-    /** Flag indicante se il servizio è in esecuzione. */
-    private volatile boolean running = true;
+    /** Cache dei risultati delle ricerche. */
+    private final HotelCache cache;
+    /** Ultimo cursore delle recensioni ricevuto dal server, usato per chiedere la pagina successiva. */
+    private String lastReviewCursor;
+    /** Testo che precede il cursore delle recensioni nelle risposte del server. */
+    private static final String REVIEW_CURSOR_MARKER = "older reviews, cursor: ";
     /** Codici escape ANSI per i colori */
     String blue = "\u001B[34m";
     String purple = "\u001B[35m";
@@ -57,6 +92,7 @@ public class HOTELIERCustomerClientService {
         private static final String NOT_VALID_RATINGS_PARAMETER_1 = "Invalid input. Please enter numeric values for ratings";
         private static final String NOT_ENOUGH_PARAMETERS = "Not enough ratings provided. Please provide ratings for cleaning, position, services, and quality";
         private static final String ERROR = "An error occurred";
+        private static final String INVALID_CURSOR = "Invalid cursor";
     }
 
     /**
@@ -66,12 +102,18 @@ public class HOTELIERCustomerClientService {
      * @param serverPort Porta del server.
      * @param UDP_addr Indirizzo IP del gruppo multicast.
      * @param UDP_port Porta del gruppo multicast.
+     * @param push_port Porta del canale TCP di push delle notifiche, 0 per usare il multicast UDP.
+     * @param cache_ttl_ms Durata in millisecondi dei risultati delle ricerche nella cache, 0 per disattivarla.
      */
-    public HOTELIERCustomerClientService(String serverAddress, int serverPort, String UDP_addr, String UDP_port){
+    public HOTELIERCustomerClientService(String serverAddress, int serverPort, String UDP_addr, String UDP_port, int push_port,
+                                         long cache_ttl_ms){
         this.serverAddress = serverAddress;
         this.serverPort = serverPort;
         this.UDP_addr = UDP_addr;
         this.UDP_port = UDP_port;
+        this.push_port = push_port;
+        this.cache = new HotelCache(cache_ttl_ms);
+        this.listener = new NotificationListener(Integer.parseInt(UDP_port), this::decodeDatagram, notifications);
     }
 
     /**
@@ -86,60 +128,216 @@ public class HOTELIERCustomerClientService {
     }
 
     
-      /**
-     * Unisce il socket multicast al gruppo specificato.
+    /**
+     * Allinea i gruppi multicast del listener alle città seguite: il gruppo base UDP_addr se non
+     * si segue nessuna città, altrimenti i gruppi delle città (vedi CityGroups).
+     */
+    private void updateGroups() {
+        synchronized (subscriptions) {
+            Set<String> wanted = new HashSet<>();
+            if (subscriptions.isEmpty()) {
+                wanted.add(UDP_addr);
+            }
+            for (String city : subscriptions.keySet()) {
+                wanted.add(CityGroups.groupFor(UDP_addr, city));
+            }
+            for (String group : listener.setGroups(wanted)) {
+                assembler.forget(group);
+            }
+        }
+    }
+
+    /**
+     * Tiene di un aggiornamento solo le notifiche delle città seguite, contandole per città.
+     * Gruppi di città diverse possono coincidere, per cui il filtro serve anche quando si è iscritti
+     * solo ai gruppi delle città seguite. Le righe che non sono notifiche di classifica vengono mantenute.
      *
-     * @param UDP_addr Indirizzo IP del gruppo multicast.
-     * @param UDP_port Porta del gruppo multicast.
+     * @param message L'aggiornamento ricevuto.
+     * @return        Le notifiche da mostrare, null se non ne resta nessuna.
+     */
+    private String filterSubscribed(String message) {
+        synchronized (subscriptions) {
+            List<String> kept = new ArrayList<>();
+            boolean any = false;
+            for (String line : message.split("\n", -1)) {
+                Matcher matcher = RANK_NOTIFICATION.matcher(line);
+                if (matcher.find()) {
+                    // La classifica della città è cambiata: i risultati memorizzati non sono più aggiornati
+                    cache.invalidateCity(matcher.group(1));
+                    if (subscriptions.isEmpty()) {
+                        allCitiesDelivered++;
+                    } else {
+                        String city = matcher.group(1).toLowerCase(Locale.ROOT);
+                        if (!subscriptions.containsKey(city)) {
+                            continue;
+                        }
+                        subscriptions.merge(city, 1L, Long::sum);
+                    }
+                }
+                if (!line.isEmpty()) {
+                    any = true;
+                }
+                kept.add(line);
+            }
+            return any ? String.join("\n", kept) : null;
+        }
+    }
+
+    /**
+     * Decodifica un datagramma multicast, eseguito dal thread del NotificationListener: ricompone
+     * l'aggiornamento, che viene mostrato solo quando ne sono arrivate tutte le parti.
+     *
+     * @param datagram Il contenuto del datagramma.
+     * @return         Le notifiche da mostrare.
      */
-    private void joinMulticastGroup(String UDP_addr, String UDP_port) {
+    private List<String> decodeDatagram(String datagram) {
+        return formatNotifications(assembler.accept(datagram));
+    }
+
+    /**
+     * Tiene le notifiche delle città seguite e le prepara per la stampa con l'istante di ricezione.
+     *
+     * @param messages Le notifiche ricevute.
+     * @return         Le notifiche da mostrare.
+     */
+    private List<String> formatNotifications(List<String> messages) {
+        List<String> formatted = new ArrayList<>(messages.size());
+        String formattedDate = LocalDateTime.now().format(NOTIFICATION_DATE);
+        for (String m : messages) {
+            String kept = filterSubscribed(m);
+            if (kept != null) {
+                formatted.add("[Automatic Notification] " + formattedDate + ": " + kept);
+            }
+        }
+        return formatted;
+    }
 
+    /**
+     * Ciclo del thread di stampa delle notifiche: attende le notifiche in coda e le stampa appena la console
+     * è libera. I thread di ricezione non attendono quindi mai il lock della console.
+     */
+    private void displayNotifications() {
+        List<String> batch = new ArrayList<>();
         try {
-            InetAddress multicastGroup = InetAddress.getByName(UDP_addr);
-            // Crea un socket multicast e lo unisce al gruppo
-            multicastSocket = new MulticastSocket(Integer.parseInt(UDP_port));
-            multicastSocket.joinGroup(multicastGroup);
-        } catch (IOException e) {
-            e.printStackTrace();
+            while (true) {
+                batch.add(notifications.take());
+                synchronized (CLILock) {
+                    notifications.drainTo(batch);
+                    for (String notification : batch) {
+                        printColored(red, notification);
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Client terminato
         }
     }
 
     /**
-     * Riceve un messaggio multicast e lo stampa a console.
-     * Gestisce un timeout per evitare blocchi indefiniti durante l'attesa del messaggio.
+     * Riceve le notifiche dal canale TCP di push (vedi PushServer). Se la connessione si interrompe
+     * si riconnette chiedendo le notifiche successive all'ultima ricevuta, così da non perderne nessuna
+     * finché sono mantenute dal server.
      */
-    private void receiveMulticastMessage() {
-        // Crea un array di byte 
-        byte[] buffer = new byte[2048];
-        DatagramPacket messageIn = new DatagramPacket(buffer, buffer.length);
+    private void receivePushMessages() {
+        while (pushActive) {
+            try (Socket socket = new Socket(serverAddress, push_port);
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+                pushSocket = socket;
+                if (!pushActive) {
+                    return;
+                }
+                // Alla prima connessione si chiedono solo le notifiche nuove
+                out.println(pushEpoch == 0 ? "SINCE" : "SINCE " + pushEpoch + " " + pushSeq);
+                String line;
+                while ((line = in.readLine()) != null) {
+                    handlePushLine(line);
+                }
+            } catch (IOException e) {
+                // Connessione non disponibile o interrotta: nuovo tentativo
+            }
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Elabora una riga ricevuta dal canale di push.
+     *
+     * @param line La riga ricevuta.
+     */
+    private void handlePushLine(String line) {
+        String[] parts = line.split(" ", 2);
         try {
-            multicastSocket.setSoTimeout(1000); // Imposta un timeout di 1 secondo
-            multicastSocket.receive(messageIn);
-            String message = new String(messageIn.getData(), 0, messageIn.getLength(), StandardCharsets.UTF_8);
-            synchronized (CLILock) {
-                LocalDateTime now = LocalDateTime.now();
-                String formattedDate = now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                // Stampa a schermo la notifica
-                printColored(red, "[Automatic Notification] " + formattedDate + ": " + message);
+            if (parts[0].equals("#EPOCH")) {
+                long epoch = Long.parseLong(parts[1]);
+                if (epoch != pushEpoch) {
+                    // Il server è stato riavviato: la numerazione riparte
+                    pushEpoch = epoch;
+                    pushSeq = -1;
+                }
+            } else if (parts[0].equals("#MISSED")) {
+                notifications.addAll(formatNotifications(List.of("Missed " + parts[1] + " notification(s)")));
+            } else if (!parts[0].startsWith("#") && parts.length == 2) {
+                pushSeq = Long.parseLong(parts[0]);
+                notifications.addAll(formatNotifications(List.of("\n" + parts[1])));
             }
-           // System.in.skip(System.in.available());
-        } catch (SocketTimeoutException e) {
-            // Non fare nulla in caso di timeout
+        } catch (RuntimeException e) {
+            // Riga non valida: viene ignorata
+        }
+    }
+
+    /**
+     * Avvia la ricezione delle notifiche, tramite il canale di push se configurato, altrimenti tramite multicast.
+     * Dopo un login successivo a un logout riprende la ricezione senza creare thread aggiuntivi.
+     */
+    private synchronized void startListening() {
+        if (displayThread == null) {
+            displayThread = new Thread(this::displayNotifications, "notification-display");
+            displayThread.setDaemon(true);
+            displayThread.start();
+        }
+        if (push_port > 0) {
+            pushActive = true;
+            if (pushThread == null || !pushThread.isAlive()) {
+                pushThread = new Thread(this::receivePushMessages, "notification-push");
+                pushThread.setDaemon(true);
+                pushThread.start();
+            }
+            return;
+        }
+        try {
+            updateGroups();
+            listener.start();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Avvia un thread per ascoltare i messaggi multicast in modo asincrono.
+     * Interrompe la ricezione delle notifiche: ferma il listener multicast e chiude il canale di push.
      */
-    private void startListening() {
-        new Thread(() -> {
-            joinMulticastGroup(UDP_addr, UDP_port);
-            while (running) {
-                receiveMulticastMessage();
+    private synchronized void stopListening() {
+        listener.stop();
+        for (String group : listener.setGroups(Set.of())) {
+            assembler.forget(group);
+        }
+        pushActive = false;
+        if (pushThread != null) {
+            pushThread.interrupt();
+        }
+        Socket socket = pushSocket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Connessione già chiusa
             }
-        }).start();
+        }
     }
 
     /**
@@ -150,16 +348,51 @@ public class HOTELIERCustomerClientService {
      * @throws IOException Se si verificano errori durante la lettura.
      */
     private int wait_response(BufferedReader in) throws IOException {
-        String line;
+        return showResponse(readResponse(in), "[SERVER]: ");
+    }
+
+    /**
+     * Legge una risposta dal server senza stamparla.
+     *
+     * @param in BufferedReader da cui leggere la risposta.
+     * @return Le righe della risposta.
+     * @throws IOException Se si verificano errori durante la lettura.
+     */
+    private List<String> readResponse(BufferedReader in) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String line = in.readLine();
+        while (!line.trim().isEmpty()) {
+            lines.add(line);
+            line = in.readLine();
+        }
+        return lines;
+    }
+
+    /**
+     * Stampa una risposta del server e ne gestisce i contenuti: codici di errore, cursore delle recensioni
+     * e versione della città, che non viene stampata ma usata per invalidare la cache.
+     *
+     * @param lines  Le righe della risposta.
+     * @param prefix Prefisso della prima riga, che indica la provenienza della risposta.
+     * @return Il valore risultante dalla risposta.
+     */
+    private int showResponse(List<String> lines, String prefix) {
         int v = 0;
 
         boolean firstLine = true;
 
-        line = in.readLine();
-
-        while (!line.trim().isEmpty()) {
+        for (String line : lines) {
+            if (line.startsWith(ClientHandler.VERSION_MARKER)) {
+                String[] version = line.substring(ClientHandler.VERSION_MARKER.length()).split(" ", 2);
+                try {
+                    cache.observeVersion(version[1], Long.parseLong(version[0]));
+                } catch (RuntimeException e) {
+                    // Riga non valida: viene ignorata
+                }
+                continue;
+            }
             if (firstLine) {
-                printColored(blue, "[SERVER]: " + line);
+                printColored(blue, prefix + line);
                 firstLine = false;
             } else {
                 // Stampa le linee successive
@@ -168,7 +401,7 @@ public class HOTELIERCustomerClientService {
 
             // Gestione dei messaggi di errore
             if (line.equals(ErrorMessages.AUTHENTICATION_FAILED) || line.equals(ErrorMessages.MUST_BE_LOGGED) || line.equals(ErrorMessages.HOTEL_NOT_FOUND)
-             || line.equals(ErrorMessages.USER_NOT_LOGGED) || line.equals(ErrorMessages.ERROR)) {
+             || line.equals(ErrorMessages.USER_NOT_LOGGED) || line.equals(ErrorMessages.ERROR) || line.equals(ErrorMessages.INVALID_CURSOR)) {
                 v = -1;
             }
             if (line.equals(ErrorMessages.USER_ALREADY_EXIST) || line.equals(ErrorMessages.USER_ALREADY_LOGGED_IN) || line.equals(ErrorMessages.USER_ALREADY_LOGGED_IN_SESSION)
@@ -181,12 +414,68 @@ public class HOTELIERCustomerClientService {
             line.equals(ErrorMessages.NOT_VALID_RATINGS_PARAMETER) || line.equals(ErrorMessages.NOT_VALID_RATINGS_PARAMETER_1) || line.equals(ErrorMessages.NOT_ENOUGH_PARAMETERS)) 
                 v = 2;
 
-            // Leggi la prossima linea
-            line = in.readLine();
+            // Memorizza il cursore delle recensioni precedenti, se presente
+            int cursorIndex = line.indexOf(REVIEW_CURSOR_MARKER);
+            if (cursorIndex >= 0) {
+                lastReviewCursor = line.substring(cursorIndex + REVIEW_CURSOR_MARKER.length()).trim();
+            }
         }
         return v;
     }
 
+    /**
+     * Restituisce la versione della città contenuta in una risposta del server.
+     *
+     * @param lines Le righe della risposta.
+     * @return La versione della città, null se la risposta non la contiene (ad esempio se la ricerca non ha risultati).
+     */
+    private static Long versionOf(List<String> lines) {
+        for (String line : lines) {
+            if (line.startsWith(ClientHandler.VERSION_MARKER)) {
+                try {
+                    return Long.parseLong(line.substring(ClientHandler.VERSION_MARKER.length()).split(" ", 2)[0]);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Esegue una ricerca servendola dalla cache se possibile, altrimenti inviandola al server e memorizzandone il risultato.
+     * I dati della ricerca vengono chiesti all'utente prima di contattare il server, per poter consultare la cache.
+     *
+     * @param action Tipo di azione da eseguire.
+     * @param inputs I dati della ricerca, inviati al server dopo la richiesta.
+     * @param key    La chiave del risultato nella cache.
+     * @param city   La città della ricerca.
+     * @param in BufferedReader per leggere le risposte dal server.
+     * @param out PrintWriter per inviare dati al server.
+     * @throws IOException In caso di errori di I/O durante la comunicazione con il server.
+     */
+    private void cachedSearch(int action, List<String> inputs, String key, String city, BufferedReader in, PrintWriter out) throws IOException {
+        List<String> cached = cache.get(key);
+        if (cached != null) {
+            showResponse(cached, "[CACHE]: ");
+            return;
+        }
+        // Le richieste dei dati sono già state mostrate dal client
+        out.println(action);
+        readResponse(in);
+        for (int i = 0; i < inputs.size() - 1; i++) {
+            out.println(inputs.get(i));
+            readResponse(in);
+        }
+        out.println(inputs.get(inputs.size() - 1));
+        List<String> lines = readResponse(in);
+        showResponse(lines, "[SERVER]: ");
+        Long version = versionOf(lines);
+        if (version != null) {
+            cache.put(key, city, version, lines);
+        }
+    }
+
     /**
      * Gestisce il processo di registrazione dell'utente lato client.
      *
@@ -278,12 +567,12 @@ public class HOTELIERCustomerClientService {
     private void search_hotel(int action, BufferedReader in, PrintWriter out) throws IOException {
 
         synchronized (CLILock) {
-            out.println(action);
-            wait_response(in);
-            readInputAndSendToServer(out);
-            wait_response(in);
-            readInputAndSendToServer(out);
-            wait_response(in);
+            lastReviewCursor = null;
+            printColored(blue, "Insert Hotel");
+            String hotel = scanner.nextLine();
+            printColored(blue, "Insert City");
+            String city = scanner.nextLine();
+            cachedSearch(action, List.of(hotel, city), HotelCache.hotelKey(hotel, city), city, in, out);
         }
     }
 
@@ -297,14 +586,74 @@ public class HOTELIERCustomerClientService {
      */
     private void search_all_hotel(int action, BufferedReader in, PrintWriter out) throws IOException {
 
+        synchronized (CLILock) {
+            lastReviewCursor = null;
+            printColored(blue, "Insert City");
+            String city = scanner.nextLine();
+            cachedSearch(action, List.of(city), HotelCache.cityKey(city), city, in, out);
+        }
+    }
+
+    /**
+     * Chiede al server la pagina successiva delle recensioni di un hotel.
+     * Se l'utente non inserisce un cursore viene usato l'ultimo ricevuto dal server.
+     *
+     * @param action Tipo di azione da eseguire.
+     * @param in BufferedReader per leggere le risposte dal server.
+     * @param out PrintWriter per inviare dati al server.
+     * @throws IOException In caso di errori di I/O durante la comunicazione con il server.
+     */
+    private void show_reviews(int action, BufferedReader in, PrintWriter out) throws IOException {
+
         synchronized (CLILock) {
             out.println(action);
             wait_response(in);
-            readInputAndSendToServer(out);
+            if (lastReviewCursor != null) {
+                printColored(purple, "Press Enter to continue from " + lastReviewCursor);
+            }
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty() && lastReviewCursor != null) {
+                input = lastReviewCursor;
+            }
+            // Il cursore viene consumato: la risposta contiene quello della pagina successiva, se esiste
+            lastReviewCursor = null;
+            out.println(input);
             wait_response(in);
         }
     }
 
+    /**
+     * Mostra le città seguite con il numero di notifiche ricevute e permette di seguire o smettere di seguire
+     * una città. Le iscrizioni sono gestite dal client scegliendo i gruppi multicast, senza comunicare con il server.
+     */
+    private void subscriptions() {
+
+        synchronized (CLILock) {
+            synchronized (subscriptions) {
+                if (subscriptions.isEmpty()) {
+                    printColored(purple, "Following all cities (" + allCitiesDelivered + " notifications received)");
+                }
+                for (Map.Entry<String, Long> entry : subscriptions.entrySet()) {
+                    printColored(purple, "Following " + entry.getKey() + " (" + entry.getValue() + " notifications received)");
+                }
+            }
+            printColored(blue, "Insert a city to follow or unfollow (empty to cancel)");
+            String city = scanner.nextLine().trim().toLowerCase(Locale.ROOT);
+            if (city.isEmpty()) {
+                return;
+            }
+            synchronized (subscriptions) {
+                if (subscriptions.remove(city) != null) {
+                    printColored(purple, "Unfollowed " + city);
+                } else {
+                    subscriptions.put(city, 0L);
+                    printColored(purple, "Following " + city);
+                }
+                updateGroups();
+            }
+        }
+    }
+
     /**
      * Invia una richiesta di inserimento di una recensione al server e gestisce la risposta.
      *
@@ -323,7 +672,9 @@ public class HOTELIERCustomerClientService {
             readInputAndSendToServer(out);
             wait_response(in);
             //quale città
-            readInputAndSendToServer(out);
+            String city = readInputAndSendToServer(out);
+            // La recensione cambia i risultati delle ricerche nella città
+            cache.invalidateCity(city);
             r = (wait_response(in));
             if(r == -1) return;
             //recensione sintetica
@@ -352,10 +703,12 @@ public class HOTELIERCustomerClientService {
      * Rileva l'input da console e lo invia al server.
      *
      * @param out PrintWriter per inviare dati al server.
+     * @return L'input inviato.
      */
-    private void readInputAndSendToServer(PrintWriter out) {
+    private String readInputAndSendToServer(PrintWriter out) {
         String input = scanner.nextLine();
         out.println(input);
+        return input;
     }
 
     /**
@@ -365,8 +718,8 @@ public class HOTELIERCustomerClientService {
         
         try (
                 Socket socket = new Socket(serverAddress, serverPort);
-                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                PrintWriter out = new PrintWriter(socket.getOutputStream(), true)
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)
         ) {
             int action;
             System.out.println("\u001B[31m******************************************");
@@ -376,7 +729,7 @@ public class HOTELIERCustomerClientService {
 
             while (true) {
                 
-                System.out.println("\u001B[34mPlease choose an option: [1]Signup, [2]Login, [3]Show badge, [4]Search Hotel, [5]Search all hotels, [6]Insert review, [7]Logout, [8]Exit\u001B[0m");
+                System.out.println("\u001B[34mPlease choose an option: [1]Signup, [2]Login, [3]Show badge, [4]Search Hotel, [5]Search all hotels, [6]Insert review, [7]Logout, [8]Exit, [9]Older reviews, [10]Subscriptions\u001B[0m");
 
                 while (!scanner.hasNextLine()) {
                     System.out.println("Invalid input. Please enter a number.");
@@ -423,16 +776,24 @@ public class HOTELIERCustomerClientService {
                         out.println(action);
                         int r = wait_response(in);
                         if(r != -1) {
-                            multicastSocket.leaveGroup(InetAddress.getByName(UDP_addr));
+                            stopListening();
                         }
-                        running = false;
                         break;
                     case 8:
                         printColored(purple, "Option Exit");
                         out.println(action);
                         wait_response(in);
-                        running = false;
+                        stopListening();
+                        printColored(purple, cache.getStats());
                         return;
+                    case 9:
+                        printColored(purple, "Option Older Reviews");
+                        show_reviews(action, in, out);
+                        break;
+                    case 10:
+                        printColored(purple, "Option Subscriptions");
+                        subscriptions();
+                        break;
                     default:
                         System.out.println("Invalid option.");
                         break;
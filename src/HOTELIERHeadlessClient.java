@@ -0,0 +1,505 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Client non interattivo di Hotelier, per l'automazione e per misurare la latenza delle operazioni.
+ * Espone un metodo per ogni operazione del protocollo, che usa un'unica connessione TCP e restituisce
+ * un Result con l'esito, le righe della risposta del server e la durata dell'operazione.
+ * Con run i comandi vengono letti dagli argomenti o da un file ed eseguiti in ordine, scrivendo
+ * un oggetto JSON per ogni comando su una riga dello standard output.
+ * I valori che il server richiederebbe di nuovo (password e valutazioni non valide) vengono controllati
+ * prima dell'invio, per non restare bloccati in una richiesta che non può essere completata.
+ */
+public class HOTELIERHeadlessClient implements Closeable {
+
+    /** Stesse regole del server per le password */
+    private static final Pattern SPECIAL_CHARACTER = Pattern.compile("[!@#$%^&*()_+\\-=\\[\\]{};':\",.<>?]+");
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final String MASKED = "***";
+    /** Sequenze di escape ANSI usate dal server per la formattazione, rimosse dalle risposte */
+    private static final Pattern ANSI_ESCAPE = Pattern.compile("\u001B\\[[0-9;]*m");
+    private static final String USAGE = "Commands: signup <user> <password> | login <user> <password> | logout | badge"
+            + " | search <hotel> <city> | searchall <city>"
+            + " | review <hotel> <city> <rate> <cleaning> <position> <services> <quality> | reviews <cursor> | exit";
+
+    /**
+     * Esito di un'operazione, scritto come una riga JSON.
+     */
+    public static final class Result {
+        private final String command;
+        private final List<String> args;
+        private final boolean ok;
+        private final double millis;
+        private final List<String> response;
+
+        private Result(String command, List<String> args, boolean ok, double millis, List<String> response) {
+            this.command = command;
+            this.args = args;
+            this.ok = ok;
+            this.millis = millis;
+            this.response = response;
+        }
+
+        /**
+         * Indica se l'operazione è riuscita.
+         *
+         * @return true se l'operazione è riuscita, false altrimenti.
+         */
+        public boolean isOk() {
+            return ok;
+        }
+
+        /**
+         * Restituisce le righe della risposta del server.
+         *
+         * @return Le righe della risposta.
+         */
+        public List<String> getResponse() {
+            return response;
+        }
+
+        /**
+         * Restituisce la durata dell'operazione.
+         *
+         * @return Durata in millisecondi, dall'invio della richiesta all'ultima riga della risposta.
+         */
+        public double getMillis() {
+            return millis;
+        }
+
+        /**
+         * Restituisce l'esito in formato JSON su una riga.
+         *
+         * @return L'oggetto JSON dell'esito.
+         */
+        public String toJson() {
+            return GSON.toJson(this);
+        }
+    }
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+    /** true se l'utente della sessione ha effettuato il login */
+    private boolean loggedIn;
+    private boolean closed;
+
+    /**
+     * Costruttore della classe HOTELIERHeadlessClient: apre la connessione con il server.
+     *
+     * @param serverAddress Indirizzo del server.
+     * @param serverPort    Porta del server.
+     * @throws IOException  Se non è possibile connettersi al server.
+     */
+    public HOTELIERHeadlessClient(String serverAddress, int serverPort) throws IOException {
+        this.socket = new Socket(serverAddress, serverPort);
+        this.socket.setTcpNoDelay(true);
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Registra un nuovo utente.
+     *
+     * @param username Nome dell'utente.
+     * @param password Password: almeno 8 caratteri e almeno un carattere speciale.
+     * @return         L'esito dell'operazione.
+     * @throws IOException Se si verificano errori di comunicazione.
+     */
+    public Result signup(String username, String password) throws IOException {
+        // La password non viene riportata nell'esito
+        List<String> args = List.of(username, MASKED);
+        if (password.length() < 8 || !SPECIAL_CHARACTER.matcher(password).find()) {
+            return rejected("signup", args, "Password must be at least 8 characters and contain at least one special character");
+        }
+        long start = System.nanoTime();
+        List<String> response = new ArrayList<>();
+        boolean ok = exchange(response, "1", "Insert a username")
+                && exchange(response, username, "Insert a password")
+                && exchange(response, password, "Signup succeeded");
+        return result("signup", args, ok, start, response);
+    }
+
+    /**
+     * Effettua il login.
+     *
+     * @param username Nome dell'utente.
+     * @param password Password dell'utente.
+     * @return         L'esito dell'operazione.
+     * @throws IOException Se si verificano errori di comunicazione.
+     */
+    public Result login(String username, String password) throws IOException {
+        long start = System.nanoTime();
+        List<String> response = new ArrayList<>();
+        boolean ok = exchange(response, "2", "Insert your username")
+                && exchange(response, username, "Insert your password")
+                && exchange(response, password, "Access succeeded");
+        loggedIn |= ok;
+        return result("login", List.of(username, MASKED), ok, start, response);
+    }
+
+    /**
+     * Effettua il logout.
+     *
+     * @return L'esito dell'operazione.
+     * @throws IOException Se si verificano errori di comunicazione.
+     */
+    public Result logout() throws IOException {
+        long start = System.nanoTime();
+        List<String> response = new ArrayList<>();
+        boolean ok = exchange(response, "7", "Logout.");
+        // Il server chiude comunque la sessione dell'utente
+        loggedIn = false;
+        return result("logout", List.of(), ok, start, response);
+    }
+
+    /**
+     * Mostra il badge dell'utente.
+     *
+     * @return L'esito dell'operazione.
+     * @throws IOException Se si verificano errori di comunicazione.
+     */
+    public Result badge() throws IOException {
+        long start = System.nanoTime();
+        List<String> response = new ArrayList<>();
+        boolean ok = exchange(response, "3", "Your Badge");
+        return result("badge", List.of(), ok, start, response);
+    }
+
+    /**
+     * Cerca un hotel in una città.
+     *
+     * @param hotel Nome dell'hotel.
+     * @param city  Città dell'hotel.
+     * @return      L'esito dell'operazione.
+     * @throws IOException Se si verificano errori di comunicazione.
+     */
+    public Result search(String hotel, String city) throws IOException {
+        long start = System.nanoTime();
+        List<String> response = new ArrayList<>();
+        boolean ok = exchange(response, "4", "Insert Hotel")
+                && exchange(response, hotel, "Insert City")
+                && exchange(response, city, null);
+        ok = ok && !lastLine(response).endsWith("not found");
+        return result("search", List.of(hotel, city), ok, start, response);
+    }
+
+    /**
+     * Cerca tutti gli hotel di una città.
+     *
+     * @param city Città degli hotel.
+     * @return     L'esito dell'operazione.
+     * @throws IOException Se si verificano errori di comunicazione.
+     */
+    public Result searchAll(String city) throws IOException {
+        long start = System.nanoTime();
+        List<String> response = new ArrayList<>();
+        boolean ok = exchange(response, "5", "Insert City")
+                && exchange(response, city, null);
+        ok = ok && !lastLine(response).equals(city + " not found");
+        return result("searchall", List.of(city), ok, start, response);
+    }
+
+    /**
+     * Pubblica una recensione.
+     *
+     * @param hotel   Nome dell'hotel.
+     * @param city    Città dell'hotel.
+     * @param rate    Valutazione sintetica da 0 a 5.
+     * @param ratings Valutazioni da 0 a 5 di pulizia, posizione, servizi e qualità.
+     * @return        L'esito dell'operazione.
+     * @throws IOException Se si verificano errori di comunicazione.
+     */
+    public Result review(String hotel, String city, String rate, String... ratings) throws IOException {
+        List<String> args = new ArrayList<>(List.of(hotel, city, rate));
+        args.addAll(Arrays.asList(ratings));
+        if (ratings.length != 4) {
+            return rejected("review", args, "Provide ratings for cleaning, position, services and quality");
+        }
+        for (String value : args.subList(2, args.size())) {
+            if (!isRating(value)) {
+                return rejected("review", args, "Please enter ratings between 0 and 5");
+            }
+        }
+        long start = System.nanoTime();
+        List<String> response = new ArrayList<>();
+        boolean ok = exchange(response, "6", "Insert Hotel")
+                && exchange(response, hotel, "Insert City")
+                && exchange(response, city, "Insert a synthetic review")
+                && exchange(response, rate, "Enter rating")
+                && exchange(response, ratings[0], "Enter rating")
+                && exchange(response, ratings[1], "Enter rating")
+                && exchange(response, ratings[2], "Enter rating")
+                && exchange(response, ratings[3], "Review posted");
+        return result("review", args, ok, start, response);
+    }
+
+    /**
+     * Mostra le recensioni precedenti di un hotel a partire da un cursore.
+     *
+     * @param cursor Il cursore, nel formato "id:posizione".
+     * @return       L'esito dell'operazione.
+     * @throws IOException Se si verificano errori di comunicazione.
+     */
+    public Result reviews(String cursor) throws IOException {
+        long start = System.nanoTime();
+        List<String> response = new ArrayList<>();
+        boolean ok = exchange(response, "9", "Insert review cursor")
+                && exchange(response, cursor, null);
+        String last = lastLine(response);
+        ok = ok && !last.equals("Invalid cursor") && !last.equals("Hotel not found");
+        return result("reviews", List.of(cursor), ok, start, response);
+    }
+
+    /**
+     * Termina la sessione con il server, effettuando il logout se necessario, e chiude la connessione.
+     *
+     * @return L'esito dell'operazione.
+     * @throws IOException Se si verificano errori di comunicazione.
+     */
+    public Result exit() throws IOException {
+        long start = System.nanoTime();
+        List<String> response = new ArrayList<>();
+        boolean ok = exchange(response, "8", "Goodbye");
+        if (ok && loggedIn) {
+            // Il server invia anche la risposta del logout
+            response.addAll(readResponse());
+        }
+        loggedIn = false;
+        Result result = result("exit", List.of(), ok, start, response);
+        close();
+        return result;
+    }
+
+    /**
+     * Invia una riga al server e aggiunge la risposta a quelle dell'operazione.
+     *
+     * @param response Le righe della risposta dell'operazione.
+     * @param line     La riga da inviare.
+     * @param expected Inizio atteso della risposta, null per accettarne qualsiasi.
+     * @return         true se la risposta inizia come atteso, false se il server ha risposto con un errore.
+     * @throws IOException Se si verificano errori di comunicazione.
+     */
+    private boolean exchange(List<String> response, String line, String expected) throws IOException {
+        out.println(line);
+        List<String> lines = readResponse();
+        response.addAll(lines);
+        return expected == null || (!lines.isEmpty() && lines.get(0).startsWith(expected));
+    }
+
+    /**
+     * Legge una risposta del server, terminata da una riga vuota, escludendo le righe della versione.
+     *
+     * @return Le righe della risposta.
+     * @throws IOException Se la connessione viene chiusa prima della fine della risposta.
+     */
+    private List<String> readResponse() throws IOException {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                return lines;
+            }
+            // La versione della città serve solo alla cache del client interattivo
+            if (line.startsWith(ClientHandler.VERSION_MARKER)) {
+                continue;
+            }
+            lines.add(ANSI_ESCAPE.matcher(line).replaceAll(""));
+        }
+        throw new IOException("Connection closed by the server");
+    }
+
+    private static String lastLine(List<String> response) {
+        return response.isEmpty() ? "" : response.get(response.size() - 1);
+    }
+
+    private static boolean isRating(String value) {
+        try {
+            float rating = Float.parseFloat(value);
+            return rating >= 0 && rating <= 5;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static Result result(String command, List<String> args, boolean ok, long start, List<String> response) {
+        double millis = Math.round((System.nanoTime() - start) / 1_000.0) / 1_000.0;
+        return new Result(command, args, ok, millis, response);
+    }
+
+    private static Result rejected(String command, List<String> args, String reason) {
+        return new Result(command, args, false, 0, List.of(reason));
+    }
+
+    /**
+     * Chiude la connessione con il server.
+     *
+     * @throws IOException Se si verificano errori durante la chiusura.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            socket.close();
+        }
+    }
+
+    /**
+     * Esegue un comando testuale.
+     *
+     * @param tokens Il nome del comando seguito dai suoi argomenti.
+     * @return       L'esito del comando.
+     * @throws IOException Se si verificano errori di comunicazione.
+     */
+    public Result execute(List<String> tokens) throws IOException {
+        String command = tokens.get(0).toLowerCase();
+        List<String> args = tokens.subList(1, tokens.size());
+        int expected;
+        switch (command) {
+            case "signup":
+            case "login":
+            case "search":
+                expected = 2;
+                break;
+            case "searchall":
+            case "reviews":
+                expected = 1;
+                break;
+            case "review":
+                expected = 7;
+                break;
+            case "logout":
+            case "badge":
+            case "exit":
+                expected = 0;
+                break;
+            default:
+                return rejected(command, new ArrayList<>(args), "Unknown command. " + USAGE);
+        }
+        if (args.size() != expected) {
+            return rejected(command, new ArrayList<>(args), "Expected " + expected + " argument(s). " + USAGE);
+        }
+        switch (command) {
+            case "signup":
+                return signup(args.get(0), args.get(1));
+            case "login":
+                return login(args.get(0), args.get(1));
+            case "search":
+                return search(args.get(0), args.get(1));
+            case "searchall":
+                return searchAll(args.get(0));
+            case "reviews":
+                return reviews(args.get(0));
+            case "review":
+                return review(args.get(0), args.get(1), args.get(2), args.get(3), args.get(4), args.get(5), args.get(6));
+            case "logout":
+                return logout();
+            case "badge":
+                return badge();
+            default:
+                return exit();
+        }
+    }
+
+    /**
+     * Divide un comando in parole separate da spazi; le parole tra virgolette possono contenere spazi.
+     *
+     * @param line Il comando.
+     * @return     Le parole del comando.
+     */
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean hasToken = false;
+        for (char c : line.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+                hasToken = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (hasToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    hasToken = false;
+                }
+            } else {
+                current.append(c);
+                hasToken = true;
+            }
+        }
+        if (hasToken) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Esegue i comandi indicati su un'unica connessione, scrivendo l'esito di ognuno come una riga JSON.
+     * Ogni argomento è un comando, oppure "--file percorso" per leggere un comando per riga da un file
+     * ("-" per lo standard input), letto come UTF-8; le righe vuote e quelle che iniziano con # vengono ignorate.
+     * Al termine la sessione viene chiusa con exit, se non è già stato fatto.
+     *
+     * @param args          Gli argomenti della riga di comando.
+     * @param serverAddress Indirizzo del server.
+     * @param serverPort    Porta del server.
+     * @param output        Destinazione delle righe JSON.
+     * @return              0 se tutti i comandi sono riusciti, 1 altrimenti.
+     * @throws IOException  Se si verificano errori di comunicazione o di lettura del file.
+     */
+    public static int run(String[] args, String serverAddress, int serverPort, PrintStream output) throws IOException {
+        List<String> commands = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--file") && i + 1 < args.length) {
+                String path = args[++i];
+                try (BufferedReader reader = path.equals("-")
+                        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                        : new BufferedReader(new FileReader(path, StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        commands.add(line);
+                    }
+                }
+            } else {
+                commands.add(args[i]);
+            }
+        }
+
+        int status = 0;
+        try (HOTELIERHeadlessClient client = new HOTELIERHeadlessClient(serverAddress, serverPort)) {
+            for (String command : commands) {
+                List<String> tokens = tokenize(command);
+                if (tokens.isEmpty() || tokens.get(0).startsWith("#")) {
+                    continue;
+                }
+                if (client.closed) {
+                    break;
+                }
+                Result result = client.execute(tokens);
+                output.println(result.toJson());
+                if (!result.isOk()) {
+                    status = 1;
+                }
+            }
+            if (!client.closed) {
+                Result result = client.exit();
+                if (!result.isOk()) {
+                    status = 1;
+                }
+            }
+        }
+        return status;
+    }
+}
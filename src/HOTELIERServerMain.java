@@ -20,6 +20,10 @@ public class HOTELIERServerMain {
     private static AuthenticationService authservice;
     /** Istanza del servizio degli hotel.*/
     private static HotelService hotelService;
+    /** Pipeline con un unico scrittore per le modifiche allo stato del server.*/
+    private static MutationPipeline pipeline;
+    /** Numero di elementi del ring buffer della pipeline.*/
+    private static int pipeline_size;
     /** Scheduler per la gestione delle attività pianificate.*/ 
     private static ScheduledExecutorService scheduler;
     /** Percorso del file di configurazione.*/
@@ -42,6 +46,26 @@ public class HOTELIERServerMain {
     private static String UDP_addr;
     /** Numero di threads da schedulare */
     private static int number_threads;
+    /** Flag che indica se calcolare le classifiche delle città in parallelo. */
+    private static boolean parallel_ranking;
+    /** Numero di posizioni della classifica di cui notificare i cambiamenti. */
+    private static int rank_notify_top;
+    /** Flag che indica se inviare tutti i cambiamenti di classifica anche al gruppo base. */
+    private static boolean notify_all_cities;
+    /** Durata in millisecondi della finestra in cui vengono raggruppati i cambiamenti di classifica di una città. */
+    private static long rank_notify_window;
+    /** Porta del canale di push TCP delle notifiche, 0 per disattivarlo. */
+    private static int push_port;
+    /** Numero di notifiche mantenute per essere reinviate ai client che si riconnettono. */
+    private static int push_replay_size;
+    /** Canale di push TCP delle notifiche, null se disattivato. */
+    private static PushServer pushServer;
+    /** Flag che indica se accettare subito i client e caricare gli hotel in background. */
+    private static boolean fast_start;
+    /** Numero di recensioni mostrate per ogni hotel e per ogni pagina. */
+    private static int review_page_size;
+    /** File mappato in memoria per le recensioni, vuoto per usare la memoria diretta. */
+    private static String review_store_file;
     /** ServerSocket per la comunicazione con i client. */
     private static ServerSocket serverSocket;
     /** ThreadPool per la gestione concorrente dei client. */
@@ -79,6 +103,16 @@ public class HOTELIERServerMain {
             UDP_addr = prop.getProperty("UDP_addr");
             number_threads = Integer.parseInt(prop.getProperty("number_threads"));
             wait_term = Integer.parseInt(prop.getProperty("wait_term"));
+            fast_start = Boolean.parseBoolean(prop.getProperty("fast_start", "true"));
+            parallel_ranking = Boolean.parseBoolean(prop.getProperty("parallel_ranking", "true"));
+            rank_notify_top = Integer.parseInt(prop.getProperty("rank_notify_top", "1"));
+            notify_all_cities = Boolean.parseBoolean(prop.getProperty("notify_all_cities", "true"));
+            rank_notify_window = Long.parseLong(prop.getProperty("rank_notify_window", "0").trim());
+            push_port = Integer.parseInt(prop.getProperty("push_port", "0").trim());
+            push_replay_size = Integer.parseInt(prop.getProperty("push_replay_size", "1000").trim());
+            pipeline_size = Integer.parseInt(prop.getProperty("pipeline_size", "1024"));
+            review_store_file = prop.getProperty("review_store_file", "").trim();
+            review_page_size = Integer.parseInt(prop.getProperty("review_page_size", "5"));
         }
     }
 
@@ -90,9 +124,25 @@ public class HOTELIERServerMain {
      */
     private static void begin() throws IOException, JsonParseException {
 
+        // Memoria fuori dall'heap per le recensioni: file mappato se configurato, altrimenti memoria diretta
+        if (!review_store_file.isEmpty()) {
+            ReviewArena.mapTo(review_store_file);
+        }
+
         // Inizializzo i servizi
         authservice = new AuthenticationService(user_path);
-        hotelService = new HotelService(hotel_path, UDP_addr, UDP_port);
+        NotificationLog pushLog = new NotificationLog(push_replay_size);
+        hotelService = new HotelService(hotel_path, UDP_addr, UDP_port, parallel_ranking, rank_notify_top, notify_all_cities, pushLog, rank_notify_window);
+        // Ripristina le classifiche salvate, per non notificare come cambiamenti quelle già note ai client
+        hotelService.loadRankings();
+        // Ripristina la popolarità delle città, che ordina il precaricamento
+        hotelService.loadPopularity();
+        if (push_port > 0) {
+            pushServer = new PushServer(push_port, pushLog);
+            pushServer.start();
+        }
+        pipeline = new MutationPipeline(pipeline_size, authservice, hotelService);
+        pipeline.start();
         serverSocket = new ServerSocket(port);
         threadPool = Executors.newCachedThreadPool();
         scheduler = Executors.newScheduledThreadPool(number_threads);
@@ -108,6 +158,13 @@ public class HOTELIERServerMain {
             }
         }
         
+        // Carica il catalogo degli hotel: in background se è attivo l'avvio rapido, altrimenti prima di accettare client
+        if (fast_start) {
+            scheduler.execute(() -> hotelService.preloadCities());
+        } else {
+            hotelService.preloadCities();
+        }
+
         // Schedula le attività di persistenza dei dati
         Runnable saveUsers = () -> {
             try {
@@ -120,7 +177,20 @@ public class HOTELIERServerMain {
         
         Runnable saveHotels = () -> {
             try {
-                hotelService.updateJsonFileAndRankCache();
+                // Ricalcola le classifiche sul thread della pipeline, poi salva gli hotel con gli score aggiornati
+                try {
+                    pipeline.submitRanking();
+                } catch (IOException e) {
+                    System.out.println("Error updating rankings: " + e.getMessage());
+                }
+                hotelService.saveHotelsToFile();
+                System.out.println(pipeline.getStats());
+                System.out.println("Review store: " + ReviewArena.getAllocatedBytes() + " bytes off-heap");
+                System.out.println(hotelService.getNotificationStats());
+                System.out.println(hotelService.getCityStats());
+                if (pushServer != null) {
+                    System.out.println(pushServer.getStats());
+                }
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -141,7 +211,7 @@ public class HOTELIERServerMain {
             try {
                 clientSocket = serverSocket.accept();
                 lastAccessTime = System.currentTimeMillis();
-                threadPool.execute(new ClientHandler(clientSocket, authservice, hotelService));
+                threadPool.execute(new ClientHandler(clientSocket, authservice, hotelService, pipeline, review_page_size));
             } catch (IOException e) {
                 if (!serverSocket.isClosed()) {
                     e.printStackTrace();
@@ -211,6 +281,23 @@ public class HOTELIERServerMain {
                 //Thread.currentThread().interrupt(); // Ri-imposta il flag di interruzione
             }
         }
+
+        // Attende che la pipeline applichi le modifiche già pubblicate
+        if (pipeline != null) {
+            try {
+                pipeline.shutdown(wait_term);
+            } catch (InterruptedException e) {
+                System.err.println("Pipeline shutdown interrupted");
+            }
+        }
+
+        // Chiude il socket delle notifiche e il canale di push
+        if (hotelService != null) {
+            hotelService.close();
+        }
+        if (pushServer != null) {
+            pushServer.close();
+        }
     }
     
     /**
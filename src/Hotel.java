@@ -1,9 +1,14 @@
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Classe che rappresenta un hotel con informazioni come ID, nome, descrizione, città, telefono, servizi, tasso, valutazioni e recensioni.
@@ -13,25 +18,39 @@ public class Hotel implements Serializable{
     private int id;
     private String name;
     private String description;
-    private String city;
+    /** Identificativo della città nel dizionario delle città, salvato su file con il nome */
+    @JsonAdapter(CityAdapter.class)
+    private int city = NameDictionary.NONE;
     private String phone;
-    private List<String> services;
+    /** Servizi come maschera di bit sul dizionario dei servizi, salvati su file come lista di nomi */
+    @JsonAdapter(ServicesAdapter.class)
+    private long services;
     private float rate;
     private Ratings ratings;
-    private ArrayList<Review> reviews;
+    private List<Review> reviews;
     private int Number_reviews;
     private float score;
 
+    /** Registro delle recensioni condiviso tra le versioni dell'hotel, di cui reviews è una vista */
+    private transient ReviewLog reviewLog;
+
     /** Pesi utilizzati per il calcolo dello score */
     private static final float WEIGHT_QUALITY = 0.4f;
     private static final float WEIGHT_QUANTITY = 0.3f;
     private static final float WEIGHT_ACTUALITY = 0.3f;
+    /** Minuti in un anno, usati per il calcolo dell'attualità */
+    private static final float MINUTES_PER_YEAR = 365 * 24 * 60;
+
+    /** Dizionari condivisi da tutti gli hotel: ogni nome di città e di servizio è memorizzato una sola volta */
+    private static final NameDictionary CITIES = new NameDictionary();
+    private static final NameDictionary SERVICES = new NameDictionary();
+    /** Numero massimo di servizi distinti, uno per bit della maschera */
+    private static final int MAX_SERVICES = Long.SIZE;
 
     /**
      * Costruttore di default che inizializza le liste e le variabili di tipo numerico.
      */
     public Hotel() {
-        this.services = new ArrayList<>();
         this.reviews = new ArrayList<>();
         this.ratings = new Ratings(0.0F, 0.0F, 0.0F, 0.0F);
         this.Number_reviews = 0;
@@ -54,13 +73,49 @@ public class Hotel implements Serializable{
         this.id = id;
         this.name = name;
         this.description = description;
-        this.city = city;
+        setCity(city);
         this.phone = phone;
-        this.services = services;
+        setServices(services);
         this.rate = rate;
         this.ratings = ratings;
     }
 
+    /**
+     * Costruttore di copia: la copia ha valutazioni proprie e condivide con l'originale il registro
+     * delle recensioni, di cui vede le stesse recensioni. Modificare la copia non altera l'hotel originale.
+     *
+     * @param other Hotel da copiare.
+     */
+    private Hotel(Hotel other) {
+        this.id = other.id;
+        this.name = other.name;
+        this.description = other.description;
+        this.city = other.city;
+        this.phone = other.phone;
+        this.services = other.services;
+        this.rate = other.rate;
+        this.ratings = new Ratings(other.ratings.getCleaning(), other.ratings.getPosition(), other.ratings.getServices(), other.ratings.getQuality());
+        this.reviewLog = other.reviewLog;
+        this.reviews = other.reviews;
+        this.Number_reviews = other.Number_reviews;
+        this.score = other.score;
+    }
+
+    /**
+     * Restituisce una nuova versione dell'hotel con la recensione aggiunta, lasciando invariato questo hotel.
+     *
+     * @param review Recensione da aggiungere.
+     * @return       La nuova versione dell'hotel.
+     */
+    public Hotel withReview(Review review) {
+        Hotel next = new Hotel(this);
+        next.setRate(review.getrate());
+        next.setRatings(review.getRatings());
+        next.setReview(review);
+        next.setNumber_reviews();
+        return next;
+    }
+
     // Metodi getter e setter per ogni campo
 
     /**
@@ -123,7 +178,7 @@ public class Hotel implements Serializable{
      * @return Città dell'hotel.
      */
     public String getCity() {
-        return city;
+        return CITIES.nameOf(city);
     }
 
     /**
@@ -132,7 +187,7 @@ public class Hotel implements Serializable{
      * @param city Nuova città dell'hotel.
      */
     public void setCity(String city) {
-        this.city = city;
+        this.city = CITIES.idOf(city);
     }
 
     /**
@@ -189,7 +244,25 @@ public class Hotel implements Serializable{
      * @param review Nuova recensione da aggiungere.
      */
     public void setReview(Review review) {
-        this.reviews.add(review);
+        // Il registro è condiviso solo se questa versione ne vede tutte le recensioni, altrimenti viene copiato
+        if (this.reviewLog == null || this.reviewLog.size() != this.reviews.size()) {
+            this.reviewLog = copyToLog(this.reviews);
+        }
+        this.reviews = this.reviewLog.view(this.reviewLog.append(review));
+    }
+
+    /**
+     * Crea un nuovo registro con le recensioni indicate.
+     *
+     * @param reviews Recensioni da copiare.
+     * @return        Il registro creato.
+     */
+    private static ReviewLog copyToLog(List<Review> reviews) {
+        ReviewLog log = new ReviewLog();
+        for (Review r : reviews) {
+            log.append(r);
+        }
+        return log;
     }
 
     /**
@@ -197,7 +270,7 @@ public class Hotel implements Serializable{
      *
      * @return Lista delle recensioni dell'hotel.
      */
-    public ArrayList<Review> getReviews() {
+    public List<Review> getReviews() {
         return this.reviews;
     }
 
@@ -207,9 +280,73 @@ public class Hotel implements Serializable{
      * @param services Nuova lista dei servizi dell'hotel.
      */
     public void setServices(List<String> services) {
+        this.services = serviceMask(services);
+    }
+
+    /**
+     * Imposta i servizi dell'hotel a partire da una maschera di bit.
+     *
+     * @param services Maschera dei servizi, come restituita da serviceMask.
+     */
+    public void setServiceMask(long services) {
         this.services = services;
     }
 
+    /**
+     * Verifica se l'hotel offre tutti i servizi di una maschera.
+     *
+     * @param mask Maschera dei servizi richiesti, come restituita da serviceMask.
+     * @return     true se l'hotel offre tutti i servizi richiesti, false altrimenti.
+     */
+    public boolean hasServices(long mask) {
+        return (this.services & mask) == mask;
+    }
+
+    /**
+     * Restituisce il bit associato a un servizio, registrando il servizio se non è ancora presente.
+     *
+     * @param service Nome del servizio.
+     * @return        La maschera con il solo bit del servizio.
+     * @throws IllegalStateException Se i servizi distinti superano il numero di bit della maschera.
+     */
+    public static long serviceBit(String service) {
+        int id = SERVICES.idOf(service);
+        if (id >= MAX_SERVICES) {
+            throw new IllegalStateException("Too many distinct services: " + service);
+        }
+        return 1L << id;
+    }
+
+    /**
+     * Restituisce la maschera di bit di un insieme di servizi.
+     *
+     * @param services Nomi dei servizi, può essere null.
+     * @return         La maschera dei servizi.
+     */
+    public static long serviceMask(Collection<String> services) {
+        long mask = 0;
+        if (services != null) {
+            for (String service : services) {
+                mask |= serviceBit(service);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Restituisce i nomi dei servizi di una maschera, nell'ordine del dizionario dei servizi.
+     *
+     * @param mask Maschera dei servizi.
+     * @return     La lista dei nomi dei servizi.
+     */
+    private static List<String> serviceNames(long mask) {
+        List<String> names = new ArrayList<>(Long.bitCount(mask));
+        for (long rest = mask; rest != 0; rest &= rest - 1) {
+            names.add(SERVICES.nameOf(Long.numberOfTrailingZeros(rest)));
+        }
+        return names;
+    }
+
     /**
      * Restituisce il tasso dell'hotel.
      *
@@ -225,7 +362,7 @@ public class Hotel implements Serializable{
      * @return La lista dei servizi dell'hotel.
      */
     public List<String> getServices() {
-        return services;
+        return serviceNames(services);
 }
 
     /**
@@ -282,49 +419,83 @@ public class Hotel implements Serializable{
     }
 
     /**
-     * Calcola il punteggio complessivo dell'hotel in base alle recensioni.
+     * Restituisce una nuova versione dell'hotel con il punteggio calcolato rispetto a un istante dato,
+     * lasciando invariato questo hotel, che può essere già pubblicato in una versione del catalogo.
+     *
+     * @param currentTime Istante di riferimento in millisecondi.
+     * @return            La nuova versione dell'hotel, o questo hotel se il punteggio non cambia.
      */
-    public void calculateScore() {
+    public Hotel withScore(long currentTime) {
+        float score = calculateScore(currentTime);
+        if (score == this.score) {
+            return this;
+        }
+        Hotel next = new Hotel(this);
+        next.setScore(score);
+        return next;
+    }
 
-        ArrayList<Review> reviews = this.getReviews();
+    /**
+     * Calcola il punteggio complessivo dell'hotel rispetto a un istante dato, senza modificare l'hotel.
+     * Se le recensioni sono nel registro, gli aggregati vengono letti in tempo costante dal registro,
+     * fuori dall'heap; altrimenti, come per un hotel appena deserializzato da Gson, vengono calcolati
+     * scorrendo le recensioni.
+     *
+     * @param currentTime Istante di riferimento in millisecondi.
+     * @return            Il punteggio dell'hotel.
+     */
+    public float calculateScore(long currentTime) {
+
+        int count = this.reviews.size();
+        double sumRates = 0;
+        // Media e non somma delle date, che supererebbe il valore massimo di un long (vedi ReviewLog)
+        double avgReviewTime = 0;
+        if (this.reviewLog != null) {
+            sumRates = this.reviewLog.sumRates(count);
+            avgReviewTime = this.reviewLog.meanDate(count);
+        } else {
+            int n = 0;
+            for (Review review : this.reviews) {
+                sumRates += review.getrate();
+                avgReviewTime = ReviewLog.nextMean(avgReviewTime, review.getDate(), ++n);
+            }
+        }
 
         float qualityScore = 0;
-        float quantityScore = reviews.size(); //oppure this.number_reviews
+        float quantityScore = count;
         float actualityScore = 0;
 
-        Date now = new Date();
-        long currentTime = now.getTime();
-
-        for (Review review : reviews) {
-            qualityScore += review.getrate();
-
-            Date reviewDate = review.getDate();
-            long reviewTime = reviewDate.getTime();
-
-            // Calcola la differenza in minuti tra la data della recensione e oggi
-            long diffInMinutes = TimeUnit.MINUTES.convert(currentTime - reviewTime, TimeUnit.MILLISECONDS);
-
-            // Calcola il punteggio di attualità in base alla differenza di minuti
-            actualityScore += 1.0f - ((float) diffInMinutes / (365 * 24 * 60));  // Converti giorni in minuti
-        }
+        if (count > 0) {
+            qualityScore = (float) (sumRates / count);
 
+            // Differenza media in minuti tra le date delle recensioni e l'istante di riferimento
+            double avgDiffInMinutes = (currentTime - avgReviewTime) / TimeUnit.MINUTES.toMillis(1);
 
-        if (!reviews.isEmpty()) {
-            qualityScore /= reviews.size();
-            actualityScore /= reviews.size();
+            // Calcola il punteggio di attualità in base alla differenza media di minuti
+            actualityScore = 1.0f - (float) (avgDiffInMinutes / MINUTES_PER_YEAR);
         }
 
         // Calcola lo score come somma pesata
-        float score = WEIGHT_QUALITY * qualityScore + WEIGHT_QUANTITY * quantityScore + WEIGHT_ACTUALITY * actualityScore;
-
-        this.setScore(score);
+        return WEIGHT_QUALITY * qualityScore + WEIGHT_QUANTITY * quantityScore + WEIGHT_ACTUALITY * actualityScore;
     }
 
     /**
-     * Restituisce una rappresentazione formattata dell'hotel con informazioni dettagliate
+     * Restituisce una rappresentazione formattata dell'hotel con informazioni dettagliate e tutte le recensioni.
      * @return Una stringa con la rappresentazione formattata dell'hotel.
      */
     public String printPretty() {
+        return printPretty(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Restituisce una rappresentazione formattata dell'hotel con informazioni dettagliate e solo le recensioni
+     * più recenti, seguite dal cursore per leggere le precedenti (vedi printReviews).
+     * Il costo non dipende dal numero totale di recensioni dell'hotel.
+     *
+     * @param reviewLimit Numero massimo di recensioni da mostrare.
+     * @return            Una stringa con la rappresentazione formattata dell'hotel.
+     */
+    public String printPretty(int reviewLimit) {
         StringBuilder stringBuilder = new StringBuilder();
 
         String hotel = "\uD83C\uDFE8";  // Hotel
@@ -342,7 +513,7 @@ public class Hotel implements Serializable{
                 .append(description).append("\n")
                 .append("| -----------------------------\n")
                 .append("| ")
-                .append(pin).append(" ").append(city).append("\n")
+                .append(pin).append(" ").append(getCity()).append("\n")
                 .append("| -----------------------------\n")
                 .append("| ")
                 .append(redphone).append("  ").append(phone).append("\n")
@@ -350,7 +521,7 @@ public class Hotel implements Serializable{
                 .append("| ")
                 .append(tick).append(boldTextStart).append(" Services\n").append(boldTextEnd);
     
-        for (String service : services) {
+        for (String service : getServices()) {
             stringBuilder.append("| ").append(service).append("\n");
         }
     
@@ -365,14 +536,60 @@ public class Hotel implements Serializable{
         if (reviews.isEmpty()) {
             stringBuilder.append("\n| No reviews yet");
         } else {
-            for (Review review : reviews) {
-                stringBuilder.append(review.printPretty());
-            }
+            appendReviews(stringBuilder, reviews.size(), reviewLimit);
         }
     
         return stringBuilder.toString();
     }
     
+    /**
+     * Restituisce una pagina di recensioni precedenti a un cursore, dalla più recente alla meno recente.
+     * Le recensioni vengono solo aggiunte in coda, per cui la posizione di una recensione non cambia
+     * e il cursore resta valido anche se nel frattempo arrivano nuove recensioni.
+     *
+     * @param before Posizione della prima recensione da escludere, come indicata dal cursore.
+     * @param limit  Numero massimo di recensioni da mostrare.
+     * @return       Una stringa con le recensioni, seguite dal cursore della pagina successiva se ce ne sono altre.
+     */
+    public String printReviews(int before, int limit) {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("| ").append(name).append(" reviews");
+        int end = Math.min(before, reviews.size());
+        if (end <= 0) {
+            stringBuilder.append("\n| No older reviews");
+        } else {
+            appendReviews(stringBuilder, end, limit);
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Aggiunge le recensioni precedenti a una posizione, dalla più recente, e il cursore per le precedenti.
+     *
+     * @param stringBuilder Destinazione del testo.
+     * @param before        Posizione della prima recensione da escludere.
+     * @param limit         Numero massimo di recensioni da aggiungere.
+     */
+    private void appendReviews(StringBuilder stringBuilder, int before, int limit) {
+        int start = Math.max(0, before - limit);
+        for (int i = before - 1; i >= start; i--) {
+            stringBuilder.append(reviews.get(i).printPretty());
+        }
+        if (start > 0) {
+            stringBuilder.append("\n| ").append(start).append(" older reviews, cursor: ").append(reviewCursor(start));
+        }
+    }
+
+    /**
+     * Restituisce il cursore che indica le recensioni dell'hotel precedenti a una posizione.
+     *
+     * @param before Posizione della prima recensione da escludere.
+     * @return       Il cursore nel formato "id:posizione".
+     */
+    public String reviewCursor(int before) {
+        return id + ":" + before;
+    }
+
     /**
      * Verifica se l'oggetto Hotel corrente è diverso da un altro oggetto Hotel in base allo score.
      *
@@ -396,9 +613,9 @@ public class Hotel implements Serializable{
                 "\t\"id\": " + id + ",\n" +
                 "\t\"name\": \"" + name + "\",\n" +
                 "\t\"description\": \"" + description + "\",\n" +
-                "\t\"city\": \"" + city + "\",\n" +
+                "\t\"city\": \"" + getCity() + "\",\n" +
                 "\t\"phone\": \"" + phone + "\",\n" +
-                "\t\"services\": " + services.toString() + ",\n" +
+                "\t\"services\": " + getServices().toString() + ",\n" +
                 "\t\"rate\": " + rate + ",\n" +
                 "\t\"ratings: " + ratings.toString() + "\n" +
                 "\t\"reviews: " + reviews.toString() + "\n" +
@@ -421,7 +638,47 @@ public class Hotel implements Serializable{
         }
         Hotel hotel = (Hotel) obj;
         return Objects.equals(name, hotel.name) &&
-                Objects.equals(city, hotel.city) &&
+                city == hotel.city &&
                 score == hotel.score;
     }
+
+    /**
+     * Adattatore Gson che salva la città con il suo nome e la legge come identificativo del dizionario.
+     */
+    private static final class CityAdapter extends TypeAdapter<Integer> {
+        @Override
+        public void write(JsonWriter out, Integer city) throws IOException {
+            out.value(CITIES.nameOf(city));
+        }
+
+        @Override
+        public Integer read(JsonReader in) throws IOException {
+            return CITIES.idOf(in.nextString());
+        }
+    }
+
+    /**
+     * Adattatore Gson che salva i servizi come lista di nomi e li legge come maschera di bit.
+     */
+    private static final class ServicesAdapter extends TypeAdapter<Long> {
+        @Override
+        public void write(JsonWriter out, Long services) throws IOException {
+            out.beginArray();
+            for (String service : serviceNames(services)) {
+                out.value(service);
+            }
+            out.endArray();
+        }
+
+        @Override
+        public Long read(JsonReader in) throws IOException {
+            long mask = 0;
+            in.beginArray();
+            while (in.hasNext()) {
+                mask |= serviceBit(in.nextString());
+            }
+            in.endArray();
+            return mask;
+        }
+    }
 }
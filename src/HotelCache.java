@@ -0,0 +1,152 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Cache lato client dei risultati delle ricerche, per hotel e città o per città.
+ * Ogni risultato è associato alla versione della città comunicata dal server (vedi ClientHandler.VERSION_MARKER)
+ * e scade dopo un tempo configurabile. Un risultato viene scartato quando il server comunica per la sua città
+ * una versione diversa, quando arriva una notifica di classifica per la città o quando l'utente vi pubblica
+ * una recensione.
+ */
+public class HotelCache {
+
+    /**
+     * Risultato memorizzato.
+     */
+    private static final class Entry {
+        private final String city;
+        private final long version;
+        private final long expiresAt;
+        private final List<String> lines;
+
+        private Entry(String city, long version, long expiresAt, List<String> lines) {
+            this.city = city;
+            this.version = version;
+            this.expiresAt = expiresAt;
+            this.lines = lines;
+        }
+    }
+
+    private final long ttl_ms;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    /**
+     * Costruttore della classe HotelCache.
+     *
+     * @param ttl_ms Durata in millisecondi dei risultati, 0 per disattivare la cache.
+     */
+    public HotelCache(long ttl_ms) {
+        this.ttl_ms = ttl_ms;
+    }
+
+    /**
+     * Restituisce la chiave del risultato della ricerca di un hotel.
+     *
+     * @param hotel Nome dell'hotel.
+     * @param city  Città dell'hotel.
+     * @return      La chiave del risultato.
+     */
+    public static String hotelKey(String hotel, String city) {
+        return "hotel:" + normalize(hotel) + "|" + normalize(city);
+    }
+
+    /**
+     * Restituisce la chiave del risultato della ricerca degli hotel di una città.
+     *
+     * @param city La città.
+     * @return     La chiave del risultato.
+     */
+    public static String cityKey(String city) {
+        return "city:" + normalize(city);
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Restituisce un risultato se presente e non scaduto.
+     *
+     * @param key La chiave del risultato.
+     * @return    Le righe del risultato, null se non è disponibile.
+     */
+    public synchronized List<String> get(String key) {
+        if (ttl_ms <= 0) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null || entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.lines;
+    }
+
+    /**
+     * Memorizza un risultato.
+     *
+     * @param key     La chiave del risultato.
+     * @param city    La città a cui si riferisce il risultato.
+     * @param version La versione della città comunicata dal server.
+     * @param lines   Le righe del risultato.
+     */
+    public synchronized void put(String key, String city, long version, List<String> lines) {
+        if (ttl_ms <= 0) {
+            return;
+        }
+        entries.put(key, new Entry(normalize(city), version, System.currentTimeMillis() + ttl_ms, List.copyOf(lines)));
+    }
+
+    /**
+     * Scarta i risultati di una città.
+     *
+     * @param city La città.
+     */
+    public synchronized void invalidateCity(String city) {
+        removeIf(normalize(city), null);
+    }
+
+    /**
+     * Registra la versione di una città comunicata dal server, scartando i risultati con una versione diversa.
+     *
+     * @param city    La città.
+     * @param version La versione attuale della città.
+     */
+    public synchronized void observeVersion(String city, long version) {
+        removeIf(normalize(city), version);
+    }
+
+    /**
+     * Scarta i risultati di una città, tranne quelli con la versione indicata.
+     *
+     * @param city    La città, normalizzata.
+     * @param version La versione da mantenere, null per scartarli tutti.
+     */
+    private void removeIf(String city, Long version) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.city.equals(city) && (version == null || entry.version != version)) {
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Restituisce le statistiche della cache.
+     *
+     * @return Una stringa con il numero di risultati serviti dalla cache, di richieste inviate al server e di risultati scartati.
+     */
+    public synchronized String getStats() {
+        return "Cache: hits=" + hits + ", misses=" + misses + ", invalidations=" + invalidations;
+    }
+}
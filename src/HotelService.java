@@ -1,15 +1,18 @@
 import java.io.*;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 
 /**
@@ -18,15 +21,47 @@ import com.google.gson.stream.JsonReader;
  */
 public class HotelService {
 
-    private final ConcurrentHashMap<Integer, Hotel> hotelCache = new ConcurrentHashMap<>();
+    // Gson condiviso per il salvataggio del file degli hotel (le date delle recensioni hanno un adattatore proprio)
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    // Versione corrente del catalogo degli hotel caricati in memoria, sostituita ad ogni modifica
+    private final AtomicReference<CatalogSnapshot> catalog = new AtomicReference<>(CatalogSnapshot.EMPTY);
+    // Caricamenti dal file in corso, per città
+    private final ConcurrentHashMap<String, CompletableFuture<List<Hotel>>> cityLoads = new ConcurrentHashMap<>();
+    // Nomi delle città incontrate nel file dal precaricamento, per città
+    private final ConcurrentHashMap<String, String> cityNames = new ConcurrentHashMap<>();
+    // Città lette dal precaricamento e non ancora pubblicate nel catalogo
+    private final Set<String> preloading = ConcurrentHashMap.newKeySet();
+    // Popolarità recente di ogni città, usata per ordinare il precaricamento
+    private final ConcurrentHashMap<String, CityPopularity> cityPopularity = new ConcurrentHashMap<>();
     //private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Lock che serializza i salvataggi del file: chi legge il file non lo acquisisce,
+    // perché il file viene sostituito in modo atomico (vedi AtomicFileWriter)
     private final Object lock = new Object();
-    private final ConcurrentHashMap<String, Hotel> rankCache = new ConcurrentHashMap<>();
+    // Durata delle ricerche eseguite durante i salvataggi
+    private final FlushReaderStats flushReaders = new FlushReaderStats();
+    // Classifiche incrementali delle città
+    private final ConcurrentHashMap<String, CityRanking> rankings = new ConcurrentHashMap<>();
+    // Versione del contenuto di ogni città, comunicata ai client per invalidare le loro cache.
+    // Parte dall'istante di avvio, per cui le versioni di esecuzioni diverse del server non coincidono
+    private final ConcurrentHashMap<String, AtomicLong> cityVersions = new ConcurrentHashMap<>();
+    private final long versionBase = System.currentTimeMillis() * 1000;
+    // Classifiche salvate all'esecuzione precedente e non ancora ripristinate, per città
+    private final ConcurrentHashMap<String, List<CityRanking.Saved>> savedRankings = new ConcurrentHashMap<>();
     //private boolean firstUpdate = true;
     
     private final String hotel_file;
-    private final String UDP_port;
+    // Mittente delle notifiche UDP, con un socket riutilizzato per tutti gli invii
+    private final NotificationSender notifier;
+    // Gruppo multicast base, da cui derivano i gruppi delle città (vedi CityGroups)
     private final String UDP_addr;
+    private final boolean notify_all_cities;
+    // Registro delle notifiche per il canale di push TCP (vedi PushServer)
+    private final NotificationLog pushLog;
+    // Raggruppa i cambiamenti di ogni città in una finestra temporale prima dell'invio
+    private final NotificationCoalescer coalescer;
+    private final boolean parallel_ranking;
+    private final int rank_notify_top;
 
     /**
      * Costruttore della classe HotelService.
@@ -34,36 +69,22 @@ public class HotelService {
      * @param hotel_file   Percorso del file JSON contenente le informazioni sugli hotel.
      * @param UDP_addr     Indirizzo IP per l'invio di notifiche UDP.
      * @param UDP_port     Porta per l'invio di notifiche UDP.
+     * @param parallel_ranking  true per calcolare le classifiche di tutte le città in parallelo.
+     * @param rank_notify_top   Numero di posizioni della classifica di cui notificare i cambiamenti.
+     * @param notify_all_cities true per inviare tutti i cambiamenti anche al gruppo base, oltre che ai gruppi delle città.
+     * @param pushLog           Registro in cui vengono aggiunte le notifiche, per il canale di push TCP.
+     * @param rank_notify_window Durata in millisecondi della finestra in cui vengono raggruppati i cambiamenti di una città.
      */
-    public HotelService(String hotel_file, String UDP_addr, String UDP_port) {
+    public HotelService(String hotel_file, String UDP_addr, String UDP_port, boolean parallel_ranking, int rank_notify_top,
+                        boolean notify_all_cities, NotificationLog pushLog, long rank_notify_window) {
         this.hotel_file = hotel_file;
-        this.UDP_port = UDP_port;
         this.UDP_addr = UDP_addr;
-    }
-
-    /**
-     * Invia un messaggio UDP a un indirizzo specifico e una porta specifica.
-     *
-     * @param message    Il messaggio da inviare.
-     * @param ipAddress  L'indirizzo IP di destinazione.
-     * @param port       La porta di destinazione.
-     */
-    private void sendUDPMessage(String message, String ipAddress, int port) {
-        try {
-            // Crea un nuovo socket Datagram
-            DatagramSocket socket = new DatagramSocket();
-            InetAddress group = InetAddress.getByName(ipAddress);
-            // Converte il messaggio in un array di byte utilizzando l'UTF-8
-            byte[] msg = message.getBytes(StandardCharsets.UTF_8);
-            // Crea un pacchetto Datagram contenente il messaggio, l'indirizzo e la porta
-            DatagramPacket packet = new DatagramPacket(msg, msg.length, group, port); 
-            // Invia il pacchetto Datagram attraverso il socket
-            socket.send(packet);
-            // Chiude il socket dopo l'invio del messaggio
-            socket.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        this.notifier = new NotificationSender(Integer.parseInt(UDP_port));
+        this.notify_all_cities = notify_all_cities;
+        this.pushLog = pushLog;
+        this.coalescer = new NotificationCoalescer(rank_notify_window, this::emitRankChanges);
+        this.parallel_ranking = parallel_ranking;
+        this.rank_notify_top = rank_notify_top;
     }
 
     /**
@@ -120,7 +141,6 @@ public class HotelService {
         Review tempReview = new Review();
         // Inizia a leggere l'oggetto JSON
         reader.beginObject();  
-        SimpleDateFormat formatter = new SimpleDateFormat("MMM dd, yyyy, h:mm:ss a");
         // Itera attraverso gli elementi dell'oggetto JSON
         while (reader.hasNext()) {
             String name = reader.nextName();
@@ -168,7 +188,7 @@ public class HotelService {
                     break;
                 // Se l'elemento è "date", legge e imposta la data nella review
                 case "date":
-                    tempReview.setDate(formatter.parse(reader.nextString()));
+                    tempReview.setDate(DateFormats.parse(DateFormats.REVIEW_FILE, reader.nextString()));
                     break;
                 // Se l'elemento non è riconosciuto, salta il suo valore
                 default:
@@ -228,13 +248,14 @@ public class HotelService {
                     tempHotel.setNumber_reviews(reader.nextInt());
                     break;
                 case "services":
-                    List<String> services = new ArrayList<>();
+                    // I servizi vengono letti direttamente come maschera di bit, senza creare una lista
+                    long services = 0;
                     reader.beginArray();
                     while (reader.hasNext()) { // Legge ogni elemento dell'array di servizi
-                        services.add(reader.nextString());
+                        services |= Hotel.serviceBit(reader.nextString());
                     }
                     reader.endArray();
-                    tempHotel.setServices(services);
+                    tempHotel.setServiceMask(services);
                     break;
                 case "reviews":
                     reader.beginArray();
@@ -256,257 +277,674 @@ public class HotelService {
     }
     
 
-     /**
-     * Cerca tutti gli hotel in una determinata città leggendo il file JSON degli hotel.
+    /**
+     * Restituisce la chiave con cui una città è memorizzata nel catalogo.
      *
-     * @param city  La città di cui cercare gli hotel.
+     * @param city  Il nome della città.
+     * @return      Il nome della città normalizzato in minuscolo.
+     */
+    private static String cityKey(String city) {
+        return city.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Legge dal file JSON degli hotel tutti gli hotel di una determinata città.
+     *
+     * @param city  La città di cui leggere gli hotel.
      * @return      Una lista di hotel nella città specificata.
      * @throws IOException  Se si verificano errori durante la lettura del file JSON.
      */
-    protected List<Hotel> searchAllHotels(String city) throws IOException {
+    private List<Hotel> readCityFromFile(String city) throws IOException {
         // Lista per memorizzare gli hotel corrispondenti alla città
         List<Hotel> hotel_list = new ArrayList<>();
         boolean cityFound = false;
-    
-        // Utilizza un blocco sincronizzato per garantire la correttezza in contesti multithreading
-        synchronized(lock) {
-            try (JsonReader reader = new JsonReader(new FileReader(hotel_file))) {
-                // Inizia a leggere l'array di hotel nel file JSON
-                reader.beginArray();
-                while (reader.hasNext()) {
-                    reader.beginObject();
-                    // Legge l'oggetto hotel corrente e lo inserisce nella lista
-                    Hotel tempHotel = readHotel(reader);
-                    reader.endObject();
-                    // Verifica se l'hotel appartiene alla città specificata
-                    if (tempHotel.getCity().toLowerCase(Locale.ROOT).equals((city).toLowerCase(Locale.ROOT))) {
-                        // Aggiunge l'hotel alla lista
-                        hotel_list.add(tempHotel);
-                        // Imposta il flag per indicare che la città è stata trovata
-                        cityFound = true;
-                    } else if (cityFound) {
-                        // Se la città è stata trovata e l'hotel successivo non appartiene alla città, termina la lettura
-                        reader.close();
-                        return hotel_list;
+
+        // Il file viene sostituito in modo atomico dai salvataggi, per cui la lettura non richiede il lock
+        try (JsonReader reader = new JsonReader(new FileReader(hotel_file, StandardCharsets.UTF_8))) {
+            // Inizia a leggere l'array di hotel nel file JSON
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginObject();
+                // Legge l'oggetto hotel corrente
+                Hotel tempHotel = readHotel(reader);
+                reader.endObject();
+                // Verifica se l'hotel appartiene alla città specificata
+                if (cityKey(tempHotel.getCity()).equals(cityKey(city))) {
+                    // Aggiunge l'hotel alla lista
+                    hotel_list.add(tempHotel);
+                    // Imposta il flag per indicare che la città è stata trovata
+                    cityFound = true;
+                } else if (cityFound) {
+                    // Gli hotel sono raggruppati per città: terminata la città, termina la lettura
+                    return hotel_list;
+                }
+            }
+            reader.endArray();
+        } catch (ParseException e) {
+            e.printStackTrace();
+        }
+        return hotel_list;
+    }
+
+    /**
+     * Legge dal file JSON, in un'unica lettura, gli hotel di tutte le città non ancora caricate,
+     * raggruppandoli per città. Le città lette vengono segnate come in caricamento (vedi getCityState).
+     *
+     * @return  Gli hotel letti per città (chiave in minuscolo), nell'ordine in cui le città compaiono nel file.
+     * @throws IOException  Se si verificano errori durante la lettura del file JSON.
+     */
+    private Map<String, List<Hotel>> readUnloadedCitiesFromFile() throws IOException {
+        Map<String, List<Hotel>> cities = new LinkedHashMap<>();
+        // Il file viene sostituito in modo atomico dai salvataggi, per cui la lettura non richiede il lock
+        try (JsonReader reader = new JsonReader(new FileReader(hotel_file, StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginObject();
+                Hotel hotel = readHotel(reader);
+                reader.endObject();
+                String key = cityKey(hotel.getCity());
+                cityNames.putIfAbsent(key, hotel.getCity());
+                if (catalog.get().getCity(key) == null) {
+                    preloading.add(key);
+                    cities.computeIfAbsent(key, k -> new ArrayList<>()).add(hotel);
+                }
+            }
+            reader.endArray();
+        } catch (ParseException e) {
+            throw new IOException("Invalid review date in " + hotel_file, e);
+        }
+        return cities;
+    }
+
+    /**
+     * Restituisce gli hotel di una città, caricandoli dal file la prima volta che la città viene richiesta.
+     * Se più thread richiedono contemporaneamente la stessa città, il file viene letto una sola volta
+     * e gli altri thread attendono la fine del caricamento.
+     *
+     * @param city  La città di cui caricare gli hotel.
+     * @return      La lista (non modificabile) degli hotel della città, vuota se la città non esiste.
+     * @throws IOException  Se si verificano errori durante la lettura del file JSON.
+     */
+    protected List<Hotel> loadCity(String city) throws IOException {
+        String key = cityKey(city);
+        List<Hotel> loaded = catalog.get().getCity(key);
+        if (loaded != null) {
+            return loaded;
+        }
+
+        CompletableFuture<List<Hotel>> newLoad = new CompletableFuture<>();
+        CompletableFuture<List<Hotel>> load = cityLoads.putIfAbsent(key, newLoad);
+
+        if (load == null) {
+            // Questo thread è il primo a richiedere la città e si occupa di caricarla
+            load = newLoad;
+            try {
+                // La città potrebbe essere stata pubblicata mentre veniva registrato il caricamento
+                List<Hotel> hotels = catalog.get().getCity(key);
+                if (hotels == null) {
+                    hotels = readCityFromFile(city);
+                    // Le città inesistenti non vengono memorizzate nel catalogo
+                    if (!hotels.isEmpty()) {
+                        hotels = publishCity(key, hotels);
                     }
                 }
-                reader.endArray();
-            } catch (ParseException e) {
-                e.printStackTrace();
+                load.complete(Collections.unmodifiableList(hotels));
+            } catch (IOException | RuntimeException e) {
+                load.completeExceptionally(e);
+                throw e;
             } finally {
-                // Rilascia eventuali risorse o lock nel blocco finally
-                //lock.readLock().unlock();
+                cityLoads.remove(key, load);
             }
         }
-        // Restituisce la lista di hotel corrispondenti alla città
-        return hotel_list;
+
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            throw new IOException("Error loading hotels of " + city, e.getCause());
+        }
     }
 
     /**
-     * Trova un hotel per nome e città nella cache o leggendolo dal file JSON degli hotel.
+     * Aggiunge una città al catalogo pubblicandone una nuova versione.
      *
+     * @param key     Il nome della città in minuscolo.
+     * @param hotels  Gli hotel della città.
+     * @return        Gli hotel della città presenti nel catalogo dopo la pubblicazione.
+     */
+    private List<Hotel> publishCity(String key, List<Hotel> hotels) {
+        return catalog.updateAndGet(snapshot -> snapshot.withCity(key, hotels)).getCity(key);
+    }
+
+    /**
+     * Restituisce lo stato di caricamento degli hotel di una città.
+     *
+     * @param city  La città di cui conoscere lo stato.
+     * @return      Lo stato di caricamento della città.
+     */
+    protected CityState getCityState(String city) {
+        String key = cityKey(city);
+        if (catalog.get().getCity(key) != null) {
+            return CityState.LOADED;
+        }
+        return cityLoads.containsKey(key) || preloading.contains(key) ? CityState.LOADING : CityState.NOT_LOADED;
+    }
+
+    /**
+     * Restituisce lo stato di caricamento delle città incontrate dal precaricamento.
+     *
+     * @return Una stringa con il numero di città per stato e le città non ancora caricate.
+     */
+    protected String getCityStats() {
+        Map<CityState, List<String>> byState = new EnumMap<>(CityState.class);
+        for (CityState state : CityState.values()) {
+            byState.put(state, new ArrayList<>());
+        }
+        for (String name : cityNames.values()) {
+            byState.get(getCityState(name)).add(name);
+        }
+        StringBuilder stats = new StringBuilder("Cities: ")
+                .append(byState.get(CityState.LOADED).size()).append(" loaded, ")
+                .append(byState.get(CityState.LOADING).size()).append(" loading, ")
+                .append(byState.get(CityState.NOT_LOADED).size()).append(" not loaded");
+        for (CityState state : new CityState[]{CityState.LOADING, CityState.NOT_LOADED}) {
+            List<String> names = byState.get(state);
+            if (!names.isEmpty()) {
+                Collections.sort(names);
+                stats.append("\n  ").append(state).append(": ").append(String.join(", ", names));
+            }
+        }
+        return stats.toString();
+    }
+
+    /**
+     * Registra una richiesta relativa a una città, usata per ordinare il precaricamento.
+     *
+     * @param city  La città richiesta.
+     */
+    private void recordCityQuery(String city) {
+        cityPopularity.computeIfAbsent(cityKey(city), k -> new CityPopularity()).hit(System.currentTimeMillis());
+    }
+
+    /**
+     * Carica in memoria tutte le città non ancora caricate. Il file viene letto una sola volta,
+     * raggruppando gli hotel per città; le città vengono poi pubblicate nel catalogo a partire da quella
+     * più richiesta di recente (vedi CityPopularity), considerando anche le richieste dell'esecuzione
+     * precedente lette da loadPopularity. Le città richieste durante la lettura vengono caricate subito
+     * da loadCity e non vengono sostituite.
+     */
+    protected void preloadCities() {
+        System.out.println("Preload started at: " + LocalDateTime.now());
+        try {
+            Map<String, List<Hotel>> cities = readUnloadedCitiesFromFile();
+            long now = System.currentTimeMillis();
+            List<String> order = new ArrayList<>(cities.keySet());
+            order.sort(Comparator.comparingDouble((String key) -> {
+                CityPopularity popularity = cityPopularity.get(key);
+                return popularity == null ? 0 : popularity.scoreAt(now);
+            }).reversed());
+            for (String key : order) {
+                publishCity(key, cities.get(key));
+                preloading.remove(key);
+            }
+        } catch (IOException e) {
+            System.out.println("Error preloading hotels: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            preloading.clear();
+        }
+        System.out.println("Preload ended at: " + LocalDateTime.now());
+        System.out.println(getCityStats());
+    }
+
+     /**
+     * Cerca tutti gli hotel in una determinata città, caricandola dal file JSON se necessario.
+     *
+     * @param city  La città di cui cercare gli hotel.
+     * @return      Una lista di hotel nella città specificata.
+     * @throws IOException  Se si verificano errori durante la lettura del file JSON.
+     */
+    protected List<Hotel> searchAllHotels(String city) throws IOException {
+        long start = flushReaders.readStarted();
+        try {
+            recordCityQuery(city);
+            return loadCity(city);
+        } finally {
+            flushReaders.readEnded(start);
+        }
+    }
+
+    /**
+     * Trova un hotel per nome in una lista di hotel.
+     *
+     * @param hotels     Gli hotel in cui cercare.
      * @param hotelName  Il nome dell'hotel.
-     * @param city       La città dell'hotel.
      * @return           L'oggetto Hotel corrispondente o null se non trovato.
-     * @throws IOException  Se si verificano errori durante la lettura del file JSON.
      */
-    protected Hotel findHotelByNameAndCity(String hotelName, String city) {
-        for (Hotel hotel : hotelCache.values()) {
-            if (hotel.getName().equalsIgnoreCase(hotelName) && hotel.getCity().equalsIgnoreCase(city)) {
+    protected Hotel findHotelByName(List<Hotel> hotels, String hotelName) {
+        for (Hotel hotel : hotels) {
+            if (hotel.getName().equalsIgnoreCase(hotelName)) {
                 return hotel;
             }
         }
-        return null; // Ritorna null se nessun hotel corrisponde al nome e alla città forniti
+        return null; // Ritorna null se nessun hotel corrisponde al nome fornito
     }
 
     /**
-    *  Trova un hotel per nome e città nella cache o leggendolo dal file JSON degli hotel.
+    *  Trova un hotel per nome e città nel catalogo, caricando la città dal file JSON se necessario.
     * @param hotelName  Il nome dell'hotel.
     * @param city       La città dell'hotel.
     * @return           L'oggetto Hotel corrispondente o null se non trovato.
     * @throws IOException  Se si verificano errori durante la lettura del file JSON.
     */
     protected Hotel searchHotel(String hotelName, String city) throws IOException {
-        // Utilizza un blocco sincronizzato per garantire la correttezza in contesti multithreading
-        synchronized(lock) {
-            try {
-                // Cerca l'hotel nella cache
-                Hotel cachedHotel = findHotelByNameAndCity(hotelName, city);
-                if (cachedHotel != null) {
-                    return cachedHotel;
-                }
-                // Apre il lettore JSON dal file
-                try (JsonReader reader = new JsonReader(new FileReader(hotel_file))) {
-                    Hotel tempHotel = null;
-                    // Inizia a leggere l'array di hotel nel file JSON
-                    reader.beginArray();
-                    // Itera attraverso gli oggetti hotel nel file JSON
-                    while (reader.hasNext()) {
-                        reader.beginObject();
-                        // Legge l'oggetto hotel corrente e lo inserisce nella cache
-                        Hotel hotel = readHotel(reader);
-                        reader.endObject();
-                        // Verifica se l'hotel corrente corrisponde al nome e alla città cercati
-                        if (hotel.getName().equalsIgnoreCase(hotelName) && hotel.getCity().equalsIgnoreCase(city)) {
-                            tempHotel = hotel;
-                            break;
-                        }
-                    }
-                    // Se l'hotel non è stato trovato, termina la lettura
-                    if (tempHotel == null) {
-                        reader.endArray();
-                        return null;
-                    }
-                    // Inserisce l'hotel trovato nella cache
-                    hotelCache.put(tempHotel.getId(), tempHotel);
-                    // Restituisce l'hotel trovato
-                    return tempHotel;
-                } catch (ParseException e) {
-                    e.printStackTrace();
-                } catch (Exception e){
-                    e.printStackTrace();
-                }
-            } finally {
-                // Rilascia eventuali risorse o lock nel blocco finally
-                //lock.readLock().unlock();
-            }
+        long start = flushReaders.readStarted();
+        try {
+            recordCityQuery(city);
+            return findHotelByName(loadCity(city), hotelName);
+        } finally {
+            flushReaders.readEnded(start);
         }
-        // Se non viene trovato alcun hotel, restituisce null
-        return null;
     }
 
     /**
-     * Aggiorna il file JSON degli hotel e la cache delle classifiche.
+     * Calcola il punteggio di ogni hotel e aggiorna la classifica incrementale di ogni città.
+     * Se è attivo il calcolo parallelo, le città vengono elaborate sul ForkJoinPool comune;
+     * entrambe le modalità producono la stessa classifica.
+     *
+     * @param hotels  Gli hotel da classificare.
+     * @param now     Istante di riferimento per il calcolo dello score.
+     * @return        I cambiamenti nelle prime posizioni delle città, ordinati per città e posizione.
      */
-    protected void updateJsonFileAndRankCache() {
-        // StringBuilder per registrare eventuali cambiamenti nelle classifiche degli hotel
-        StringBuilder changes = new StringBuilder();
-        // Timestamp di inizio aggiornamento
-        System.out.println("Update started at: " + LocalDateTime.now());
+    protected List<RankChange> rankCities(List<Hotel> hotels, long now) {
+        // Raggruppa gli hotel per città
+        Map<String, List<Hotel>> cityToHotels = parallel_ranking
+                ? hotels.parallelStream().collect(Collectors.groupingByConcurrent(Hotel::getCity))
+                : hotels.stream().collect(Collectors.groupingBy(Hotel::getCity));
 
-        // Blocco sincronizzato per garantire l'accesso sicuro alle risorse condivise
-        synchronized (lock) {
-            // Debug: Stampa la cache degli hotel prima dell'aggiornamento
-            System.out.println("hotel cache: " + hotelCache);
-            try {
-                // Crea un oggetto Gson per la manipolazione dei dati JSON
-                Gson gson = new GsonBuilder()
-                        .setDateFormat("MMM dd, yyyy, h:mm:ss a").setPrettyPrinting().create();
-                // Legge file e converte in una lista di oggetti Hotel
-                Reader reader = new FileReader(hotel_file);
-                List<Hotel> hotels = null;
+        Stream<Map.Entry<String, List<Hotel>>> cities = parallel_ranking
+                ? cityToHotels.entrySet().parallelStream()
+                : cityToHotels.entrySet().stream();
+        return cities.flatMap(entry -> updateRanking(entry.getKey(), entry.getValue(), now).stream())
+                .sorted(Comparator.comparing(RankChange::getCity).thenComparingInt(RankChange::getPosition))
+                .collect(Collectors.toList());
+    }
 
-                //hotels = gson.fromJson(reader, new TypeToken<List<Hotel>>() {}.getType());
+    /**
+     * Ricalcola lo score degli hotel indicati e ne aggiorna la posizione nella classifica della città.
+     * Gli hotel pubblicati non vengono modificati: le versioni con lo score aggiornato sostituiscono
+     * nel catalogo quelle da cui sono state calcolate, così i lettori non vedono mai cambiare uno score.
+     *
+     * @param city    La città degli hotel.
+     * @param hotels  Gli hotel della città da aggiornare.
+     * @param now     Istante di riferimento per il calcolo dello score.
+     * @return        I cambiamenti nelle prime posizioni della città.
+     */
+    private List<RankChange> updateRanking(String city, Collection<Hotel> hotels, long now) {
+        List<Hotel> scored = new ArrayList<>(hotels.size());
+        Map<Hotel, Hotel> replacements = new IdentityHashMap<>();
+        for (Hotel hotel : hotels) {
+            Hotel next = hotel.withScore(now);
+            scored.add(next);
+            if (next != hotel) {
+                replacements.put(hotel, next);
+            }
+        }
+        if (!replacements.isEmpty()) {
+            String key = cityKey(city);
+            catalog.updateAndGet(snapshot -> snapshot.withReplaced(key, replacements));
+        }
+        return rankings.computeIfAbsent(city, c -> restoreRanking(c, scored)).update(scored);
+    }
 
-                Hotel[] deserialized = gson.fromJson(reader, Hotel[].class);
-                hotels = Arrays.asList(deserialized);
- 
-                reader.close();
+    /**
+     * Crea la classifica di una città, ripristinando quella salvata all'esecuzione precedente se presente:
+     * in questo modo dopo un riavvio vengono notificati solo i cambiamenti effettivi.
+     *
+     * @param city    La città.
+     * @param hotels  Gli hotel della città.
+     * @return        La classifica della città.
+     */
+    private CityRanking restoreRanking(String city, Collection<Hotel> hotels) {
+        CityRanking ranking = new CityRanking(city, rank_notify_top);
+        List<CityRanking.Saved> saved = savedRankings.remove(city);
+        if (saved != null) {
+            // Gli hotel salvati che non sono più nel catalogo vengono ignorati
+            ranking.restore(saved, hotels);
+        }
+        return ranking;
+    }
 
-                // Ottiene gli ID degli hotel presenti nella cache
-                Set<Integer> cachedHotelIds = hotelCache.keySet();
+    /**
+     * Restituisce il file delle classifiche, salvato accanto al file degli hotel.
+     *
+     * @return Il file delle classifiche.
+     */
+    private File rankingsFile() {
+        return new File(hotel_file + ".ranks");
+    }
 
-                // Aggiunge alla cache gli hotel presenti nel file ma non nella cache
-                for (Hotel hotel : hotels) {
-                    if (!cachedHotelIds.contains(hotel.getId())) {
-                        hotelCache.put(hotel.getId(), hotel);
-                    }
-                }
+    /**
+     * Legge le classifiche salvate all'esecuzione precedente. Vengono ripristinate quando ogni città
+     * viene classificata per la prima volta, senza ricalcolarle.
+     */
+    protected void loadRankings() {
+        File file = rankingsFile();
+        if (!file.exists()) {
+            return;
+        }
+        try (Reader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            Map<String, List<CityRanking.Saved>> saved =
+                    GSON.fromJson(reader, new TypeToken<Map<String, List<CityRanking.Saved>>>() {}.getType());
+            if (saved != null) {
+                savedRankings.putAll(saved);
+            }
+            System.out.println("Restored rankings of " + savedRankings.size() + " cities");
+        } catch (IOException | RuntimeException e) {
+            // Senza classifiche salvate le città vengono classificate da zero
+            System.out.println("Error reading rankings: " + e.getMessage());
+        }
+    }
 
-                // Aggiorna le informazioni degli hotel nel file con quelle presenti nella cache
-                for (Map.Entry<Integer, Hotel> entry : hotelCache.entrySet()) {
-                    int id = entry.getKey();
-                    Hotel cachedHotel = entry.getValue();
+    /**
+     * Restituisce il file della popolarità delle città, salvato accanto al file degli hotel.
+     *
+     * @return Il file della popolarità.
+     */
+    private File popularityFile() {
+        return new File(hotel_file + ".popularity");
+    }
 
-                    for (int i = 0; i < hotels.size(); i++) {
-                        if (hotels.get(i).getId() == id) {
-                            hotels.set(i, cachedHotel);
-                            break;
-                        }
-                    }
+    /**
+     * Legge la popolarità delle città salvata all'esecuzione precedente, così il precaricamento
+     * parte dalle città più richieste di recente anche subito dopo un riavvio.
+     */
+    protected void loadPopularity() {
+        File file = popularityFile();
+        if (!file.exists()) {
+            return;
+        }
+        try (Reader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            Map<String, Double> saved = GSON.fromJson(reader, new TypeToken<Map<String, Double>>() {}.getType());
+            if (saved != null) {
+                // Le richieste continuano a perdere peso dall'istante del salvataggio
+                long savedAt = file.lastModified();
+                for (Map.Entry<String, Double> entry : saved.entrySet()) {
+                    cityPopularity.putIfAbsent(entry.getKey(), new CityPopularity(entry.getValue(), savedAt));
                 }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Senza popolarità salvata il precaricamento segue l'ordine del file
+            System.out.println("Error reading city popularity: " + e.getMessage());
+        }
+    }
 
-                // Calcola del punteggio aggiornato per ogni hotel
-                for (Hotel hotel : hotels) {
-                    hotel.calculateScore();
-                }
-                // Raggruppa gli hotel per città e ordina per punteggio
-                Map<String, PriorityQueue<Hotel>> cityToHotelsMap = new HashMap<>();
-                for (Hotel hotel : hotels) {
-                    cityToHotelsMap.putIfAbsent(hotel.getCity(), new PriorityQueue<>(Comparator.comparing(Hotel::getScore).reversed()));
-                    cityToHotelsMap.get(hotel.getCity()).add(hotel);
-                }
+    /**
+     * Salva la popolarità attuale delle città accanto al file degli hotel.
+     *
+     * @throws IOException Se si verificano errori durante la scrittura.
+     */
+    private void savePopularity() throws IOException {
+        long now = System.currentTimeMillis();
+        Map<String, Double> saved = new TreeMap<>();
+        for (Map.Entry<String, CityPopularity> entry : cityPopularity.entrySet()) {
+            saved.put(entry.getKey(), entry.getValue().scoreAt(now));
+        }
+        AtomicFileWriter.write(popularityFile(), GSON.toJson(saved));
+    }
 
-                // Crea una mappa contenente gli hotel con il punteggio più alto per ogni città
-                Map<String, Hotel> cityToTopHotelMap = new HashMap<>();
-                for (Map.Entry<String, PriorityQueue<Hotel>> entry : cityToHotelsMap.entrySet()) {
-                    String city = entry.getKey();
-                    PriorityQueue<Hotel> cityHotels = entry.getValue();
-                    cityToTopHotelMap.put(city, cityHotels.peek());
-                }
+    /**
+     * Salva le classifiche accanto al file degli hotel, incluse quelle salvate in precedenza
+     * e non ancora ripristinate. Va invocato dopo il salvataggio degli hotel, a cui corrispondono gli score.
+     *
+     * @throws IOException Se si verificano errori durante la scrittura.
+     */
+    private void saveRankings() throws IOException {
+        Map<String, List<CityRanking.Saved>> saved = new TreeMap<>(savedRankings);
+        for (Map.Entry<String, CityRanking> entry : rankings.entrySet()) {
+            saved.put(entry.getKey(), entry.getValue().save());
+        }
+        AtomicFileWriter.write(rankingsFile(), GSON.toJson(saved));
+    }
 
-                // Verifica le modifiche nelle classifiche e registra i cambiamenti
-                for (Map.Entry<String, Hotel> entry : cityToTopHotelMap.entrySet()) {
-                    String city = entry.getKey();
-                    Hotel newHotel = entry.getValue();
+    /**
+     * Ricalcola lo score di tutti gli hotel caricati e aggiorna le classifiche delle loro città, notificando
+     * gli eventuali cambiamenti. Deve essere invocato dal thread della MutationPipeline, come le recensioni:
+     * parte così dall'ultima versione del catalogo e non può sovrascrivere score più recenti.
+     */
+    protected void updateAllRanks() {
+        List<Hotel> hotels = new ArrayList<>();
+        for (List<Hotel> cityHotels : catalog.get().getCities()) {
+            hotels.addAll(cityHotels);
+        }
+        sendRankChanges(rankCities(hotels, System.currentTimeMillis()));
+    }
 
-                    if (newHotel != null && (!rankCache.containsKey(city) || rankCache.get(city).getId() != newHotel.getId())) {
-                        changes.append("\n1st ranked Hotel in ").append(city).append(" is now ").append(newHotel.getName());
+    /**
+     * Aggiorna il file JSON degli hotel con il catalogo in memoria. Le classifiche vengono ricalcolate
+     * dalla MutationPipeline (vedi updateAllRanks) e le città vengono caricate solo quando richieste
+     * o dal precaricamento, per cui il salvataggio non modifica il catalogo.
+     */
+    protected void saveHotelsToFile() {
+        // Timestamp di inizio aggiornamento
+        System.out.println("Update started at: " + LocalDateTime.now());
+
+        // Il lock serializza soltanto i salvataggi: le ricerche leggono il catalogo in memoria e i caricamenti
+        // leggono il file, che viene sostituito in modo atomico, per cui nessun lettore attende la scrittura
+        synchronized (lock) {
+            long start = System.nanoTime();
+            long snapshotEnd = start;
+            flushReaders.beginFlush();
+            try {
+                // Fase 1: raccoglie gli hotel già caricati nel catalogo, che contengono le modifiche non ancora salvate.
+                // Viene usata un'unica versione del catalogo, per cui le modifiche concorrenti non la alterano
+                Map<Integer, Hotel> loadedHotels = new HashMap<>();
+                for (List<Hotel> cityHotels : catalog.get().getCities()) {
+                    for (Hotel hotel : cityHotels) {
+                        loadedHotels.put(hotel.getId(), hotel);
                     }
                 }
+                snapshotEnd = System.nanoTime();
 
-                // Aggiorna la cache delle classifiche
-                rankCache.clear();
-                rankCache.putAll(cityToTopHotelMap);
-
-                // Converte la lista di hotel aggiornata in una stringa JSON
-                String json = gson.toJson(hotels);
+                // Fase 2: lettura, serializzazione e scrittura del file, senza bloccare alcun lettore
+                // Legge file e converte in una lista di oggetti Hotel
+                List<Hotel> hotels;
+                try (Reader reader = new FileReader(hotel_file, StandardCharsets.UTF_8)) {
+                    Hotel[] deserialized = GSON.fromJson(reader, Hotel[].class);
+                    hotels = Arrays.asList(deserialized);
+                }
 
-                // Scrive la stringa JSON nel file
-                try (FileWriter writer = new FileWriter(hotel_file)) {
-                    writer.write(json);
-                } catch (IOException e) {
-                    System.out.println("Error writing to file: " + e.getMessage());
-                    e.printStackTrace();
+                // Aggiorna le informazioni degli hotel nel file con quelle presenti nel catalogo
+                for (int i = 0; i < hotels.size(); i++) {
+                    Hotel loadedHotel = loadedHotels.get(hotels.get(i).getId());
+                    if (loadedHotel != null) {
+                        hotels.set(i, loadedHotel);
+                    }
                 }
 
-                // Svuota della cache degli hotel
-                hotelCache.clear();
+                // Converte la lista di hotel aggiornata in una stringa JSON e sostituisce il file
+                AtomicFileWriter.write(new File(hotel_file), GSON.toJson(hotels));
+                saveRankings();
+                savePopularity();
 
             } catch (IOException e) {
-                System.out.println("Error reading file: " + e.getMessage());
+                System.out.println("Error updating file: " + e.getMessage());
                 e.printStackTrace();
             } catch (Exception e) {
                 e.printStackTrace();
             } finally {
-                // Timestamp di fine aggiornamento
+                long end = System.nanoTime();
+                // Timestamp di fine aggiornamento e durata delle due fasi
                 System.out.println("Update ended at: " + LocalDateTime.now());
-                // Invia una notifica tramite UDP se ci sono stati cambiamenti nelle classifiche
-                if (changes.length() >0) {
-                    sendUDPMessage(changes.toString(), UDP_addr, Integer.parseInt(UDP_port));
-                }
+                // Le ricerche non attendono il lock: la loro durata durante il salvataggio mostra se ne sono rallentate
+                System.out.printf("Update timing: snapshot %d ms, file I/O %d ms, %s%n",
+                        (snapshotEnd - start) / 1_000_000, (end - snapshotEnd) / 1_000_000, flushReaders.endFlush());
             }
         }
     }
 
     /**
-     * Scrive una recensione di un hotel, aggiornando il punteggio e la cache degli hotel.
+     * Notifica i cambiamenti di classifica indicati, raggruppandoli per città nella finestra configurata
+     * (vedi NotificationCoalescer).
+     *
+     * @param changes  I cambiamenti da notificare.
+     */
+    private void sendRankChanges(List<RankChange> changes) {
+        coalescer.submit(changes);
+    }
+
+    /**
+     * Invia tramite UDP i cambiamenti di classifica indicati (vedi NotificationSender): i cambiamenti di ogni città
+     * vengono inviati come un unico aggiornamento al gruppo della città e, se notify_all_cities è attivo,
+     * tutti insieme al gruppo base, seguito dai client che non si sono iscritti a nessuna città.
+     * I cambiamenti vengono anche aggiunti al registro del canale di push.
+     *
+     * @param changes  I cambiamenti da notificare.
+     */
+    private void emitRankChanges(List<RankChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<String> messages = new ArrayList<>(changes.size());
+        Map<String, List<String>> cityMessages = new LinkedHashMap<>();
+        for (RankChange change : changes) {
+            String message = change.toMessage();
+            messages.add(message);
+            cityMessages.computeIfAbsent(change.getCity(), k -> new ArrayList<>()).add(message);
+        }
+        for (Map.Entry<String, List<String>> entry : cityMessages.entrySet()) {
+            notifier.send(entry.getKey(), CityGroups.groupFor(UDP_addr, entry.getKey()), entry.getValue());
+        }
+        if (notify_all_cities) {
+            notifier.send("*", UDP_addr, messages);
+        }
+        pushLog.append(messages);
+    }
+
+    /**
+     * Aggiorna la posizione degli hotel indicati nelle classifiche delle loro città e notifica tramite UDP,
+     * in un'unica notifica, gli eventuali cambiamenti nelle prime posizioni.
+     *
+     * @param hotels  Gli hotel di cui è cambiato lo score.
+     */
+    protected void updateRanks(Collection<Hotel> hotels) {
+        long now = System.currentTimeMillis();
+        // Raggruppa gli hotel per città
+        Map<String, List<Hotel>> cityToHotels = new LinkedHashMap<>();
+        for (Hotel hotel : hotels) {
+            cityToHotels.computeIfAbsent(hotel.getCity(), k -> new ArrayList<>()).add(hotel);
+        }
+        List<RankChange> changes = new ArrayList<>();
+        for (Map.Entry<String, List<Hotel>> entry : cityToHotels.entrySet()) {
+            String city = entry.getKey();
+            try {
+                // Se la città non è ancora in classifica, vengono classificati tutti i suoi hotel
+                Collection<Hotel> cityHotels = rankings.containsKey(city) ? entry.getValue() : loadCity(city);
+                changes.addAll(updateRanking(city, cityHotels, now));
+            } catch (IOException e) {
+                System.out.println("Error updating the rank of " + city + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        sendRankChanges(changes);
+    }
+
+    /**
+     * Scrive una recensione di un hotel, pubblicando una nuova versione dell'hotel nel catalogo.
+     * Deve essere invocato da un solo thread alla volta, quello della MutationPipeline; la classifica
+     * va aggiornata in seguito con updateRanks.
      *
      * @param user    L'utente che scrive la recensione.
      * @param hotel   L'hotel per cui viene scritta la recensione.
      * @param review  La recensione scritta.
-     * @throws IOException  Se si verificano errori durante la scrittura del file JSON.
+     * @return        La nuova versione dell'hotel.
+     * @throws IOException  Se l'hotel non è presente nel catalogo.
      */
-    protected void writeReview(User user, Hotel hotel, Review review) throws IOException{
+    protected Hotel writeReview(User user, Hotel hotel, Review review) throws IOException{
 
-        // Setta i vari parametri della recensione
-        hotel.setRate(review.getrate());
-        hotel.setRatings(review.getRatings());
-        hotel.setReview(review);
-        hotel.setNumber_reviews();
-        // Mette l'hotel nella cache
-        hotelCache.put(hotel.getId(), hotel);
-        System.err.println(hotelCache);
+        String key = cityKey(hotel.getCity());
+        // Parte dalla versione corrente dell'hotel, che può essere più recente di quella ricevuta
+        List<Hotel> hotels = catalog.get().getCity(key);
+        Hotel current = hotels == null ? null : findHotelById(hotels, hotel.getId());
+        if (current == null) {
+            throw new IOException("Hotel " + hotel.getName() + " is not loaded");
+        }
+        // Crea la nuova versione dell'hotel con la recensione e la pubblica in una nuova versione del catalogo.
+        // Il catalogo può essere modificato in parallelo dai caricamenti, per cui la pubblicazione è atomica
+        Hotel next = current.withReview(review);
+        catalog.updateAndGet(snapshot -> snapshot.withHotel(key, next));
+        cityVersion(key).incrementAndGet();
+        return next;
     }
-}
 
+    /**
+     * Restituisce la versione del contenuto di una città, che cambia a ogni recensione pubblicata.
+     *
+     * @param city  La città.
+     * @return      La versione attuale della città.
+     */
+    protected long getCityVersion(String city) {
+        // Il contatore viene creato solo dalle recensioni, per non crearne uno per ogni città cercata dai client
+        AtomicLong version = cityVersions.get(cityKey(city));
+        return version == null ? versionBase : version.get();
+    }
+
+    /**
+     * Restituisce il contatore della versione di una città, creandolo se necessario.
+     *
+     * @param key  Il nome della città in minuscolo.
+     * @return     Il contatore della versione.
+     */
+    private AtomicLong cityVersion(String key) {
+        return cityVersions.computeIfAbsent(key, k -> new AtomicLong(versionBase));
+    }
+
+    /**
+     * Restituisce le statistiche delle notifiche inviate.
+     *
+     * @return Una stringa con il numero di aggiornamenti e di datagrammi inviati e di cambiamenti raggruppati.
+     */
+    protected String getNotificationStats() {
+        return notifier.getStats() + "\n" + coalescer.getStats();
+    }
+
+    /**
+     * Rilascia le risorse del servizio, chiudendo il socket delle notifiche.
+     */
+    protected void close() {
+        // Invia i cambiamenti ancora trattenuti prima di chiudere il socket
+        coalescer.close();
+        notifier.close();
+    }
+
+    /**
+     * Cerca per ID un hotel tra quelli caricati nel catalogo.
+     *
+     * @param id  L'ID dell'hotel.
+     * @return    La versione corrente dell'hotel o null se non è caricato.
+     */
+    protected Hotel searchHotelById(int id) {
+        for (List<Hotel> hotels : catalog.get().getCities()) {
+            Hotel hotel = findHotelById(hotels, id);
+            if (hotel != null) {
+                return hotel;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Trova un hotel per ID in una lista di hotel.
+     *
+     * @param hotels  Gli hotel in cui cercare.
+     * @param id      L'ID dell'hotel.
+     * @return        L'oggetto Hotel corrispondente o null se non trovato.
+     */
+    private Hotel findHotelById(List<Hotel> hotels, int id) {
+        for (Hotel hotel : hotels) {
+            if (hotel.getId() == id) {
+                return hotel;
+            }
+        }
+        return null;
+    }
+}
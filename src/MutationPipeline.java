@@ -0,0 +1,344 @@
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pipeline con un unico scrittore per tutte le modifiche allo stato del server: recensioni
+ * (con l'aggiornamento del numero di recensioni e del badge dell'utente), registrazioni e ricalcolo
+ * periodico delle classifiche.
+ * I thread dei client pubblicano gli eventi in un ring buffer pre-allocato; un unico thread li applica
+ * nell'ordine di pubblicazione e, terminato ogni gruppo di eventi disponibili, aggiorna una sola volta
+ * le classifiche degli hotel modificati. Il thread del client attende che il proprio evento sia applicato.
+ */
+public class MutationPipeline {
+
+    /** Tipi di evento */
+    private enum Type { REVIEW, SIGNUP, RANKING }
+
+    /** Elemento pre-allocato del ring buffer, riutilizzato per gli eventi successivi */
+    private static final class Slot {
+        /** Sequenza dell'ultimo evento pubblicato nell'elemento */
+        private volatile long published = -1;
+        /** Sequenza dell'ultimo evento applicato */
+        private volatile long applied = -1;
+        /** Sequenza dell'ultimo evento il cui esito è stato letto, dopo la quale l'elemento è libero */
+        private volatile long released;
+
+        private Type type;
+        private User user;
+        private Hotel hotel;
+        private Review review;
+        private String username;
+        private String password;
+        private Exception error;
+        private Thread waiter;
+
+        private Slot(long released) {
+            this.released = released;
+        }
+    }
+
+    private final Slot[] ring;
+    private final int mask;
+    /** Sequenza del prossimo evento da pubblicare, CLOSED dopo la chiusura della pipeline */
+    private final AtomicLong nextSequence = new AtomicLong();
+    /** Valore di nextSequence dopo la chiusura: nessun evento può più essere pubblicato */
+    private static final long CLOSED = -1;
+    /** Sequenza successiva all'ultimo evento riservato prima della chiusura, Long.MAX_VALUE finché la pipeline è aperta */
+    private volatile long endSequence = Long.MAX_VALUE;
+    private final AuthenticationService authservice;
+    private final HotelService hotelService;
+    private final Thread consumer;
+
+    /** Statistiche, scritte solo dal thread che applica gli eventi */
+    private volatile long appliedEvents;
+    private volatile long batches;
+    private volatile long maxBatch;
+    /** Tempo di attesa dei client per un elemento libero, in nanosecondi */
+    private final LongAdder producerWaitNanos = new LongAdder();
+
+    /**
+     * Costruttore della classe MutationPipeline.
+     *
+     * @param size          Numero di elementi del ring buffer, arrotondato alla potenza di 2 successiva.
+     * @param authservice   Servizio di autenticazione.
+     * @param hotelService  Servizio degli hotel.
+     */
+    public MutationPipeline(int size, AuthenticationService authservice, HotelService hotelService) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.ring = new Slot[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Slot(i - capacity);
+        }
+        this.authservice = authservice;
+        this.hotelService = hotelService;
+        this.consumer = new Thread(this::consume, "mutation-pipeline");
+        // Non impedisce la terminazione della JVM se la chiusura scade prima che gli eventi siano applicati
+        this.consumer.setDaemon(true);
+    }
+
+    /**
+     * Avvia il thread che applica gli eventi.
+     */
+    public void start() {
+        consumer.start();
+    }
+
+    /**
+     * Pubblica una recensione e attende che sia applicata.
+     *
+     * @param user    L'utente che scrive la recensione.
+     * @param hotel   L'hotel recensito.
+     * @param review  La recensione.
+     * @throws IOException  Se la recensione non può essere applicata.
+     */
+    public void submitReview(User user, Hotel hotel, Review review) throws IOException {
+        long seq = claim();
+        Slot slot = ring[(int) seq & mask];
+        slot.type = Type.REVIEW;
+        slot.user = user;
+        slot.hotel = hotel;
+        slot.review = review;
+        Exception error = publishAndAwait(slot, seq);
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error != null) {
+            throw new IOException(error.getMessage(), error);
+        }
+    }
+
+    /**
+     * Pubblica la registrazione di un utente e attende che sia applicata.
+     *
+     * @param username  Nome utente.
+     * @param password  Password.
+     * @throws AuthenticationException  Se il nome utente è già registrato.
+     * @throws IOException              Se la registrazione non può essere applicata.
+     */
+    public void submitSignup(String username, String password) throws AuthenticationException, IOException {
+        long seq = claim();
+        Slot slot = ring[(int) seq & mask];
+        slot.type = Type.SIGNUP;
+        slot.username = username;
+        slot.password = password;
+        Exception error = publishAndAwait(slot, seq);
+        if (error instanceof AuthenticationException) {
+            throw (AuthenticationException) error;
+        } else if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error != null) {
+            throw new IOException(error.getMessage(), error);
+        }
+    }
+
+    /**
+     * Pubblica il ricalcolo delle classifiche di tutte le città caricate e attende che sia applicato.
+     * Gli score dipendono dall'istante di calcolo, per cui vanno ricalcolati anche senza nuove recensioni;
+     * il ricalcolo avviene sul thread della pipeline, che vede sempre l'ultima versione degli hotel.
+     *
+     * @throws IOException  Se il ricalcolo non può essere applicato.
+     */
+    public void submitRanking() throws IOException {
+        long seq = claim();
+        Slot slot = ring[(int) seq & mask];
+        slot.type = Type.RANKING;
+        Exception error = publishAndAwait(slot, seq);
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error != null) {
+            throw new IOException(error.getMessage(), error);
+        }
+    }
+
+    /**
+     * Riserva la sequenza del prossimo evento, attendendo che il suo elemento del ring buffer sia libero.
+     * La riserva è atomica rispetto alla chiusura: ogni sequenza riservata viene applicata anche
+     * se la pipeline viene chiusa subito dopo.
+     *
+     * @return La sequenza riservata.
+     * @throws IOException Se la pipeline è stata chiusa.
+     */
+    private long claim() throws IOException {
+        long seq;
+        do {
+            seq = nextSequence.get();
+            if (seq == CLOSED) {
+                throw new IOException("Server is shutting down");
+            }
+        } while (!nextSequence.compareAndSet(seq, seq + 1));
+        Slot slot = ring[(int) seq & mask];
+        if (slot.released != seq - ring.length) {
+            // Ring buffer pieno: attende che l'evento precedente nello stesso elemento sia concluso.
+            // La sequenza è già riservata, per cui l'attesa prosegue anche se il thread viene interrotto
+            long start = System.nanoTime();
+            boolean interrupted = false;
+            while (slot.released != seq - ring.length) {
+                LockSupport.parkNanos(this, TimeUnit.MICROSECONDS.toNanos(10));
+                interrupted |= Thread.interrupted();
+            }
+            producerWaitNanos.add(System.nanoTime() - start);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return seq;
+    }
+
+    /**
+     * Pubblica l'evento scritto nell'elemento, attende che venga applicato e libera l'elemento.
+     * L'attesa non può essere abbandonata, perché l'elemento verrebbe riutilizzato mentre è ancora in uso:
+     * un'interruzione viene quindi registrata e ripristinata al termine dell'attesa.
+     *
+     * @param slot  L'elemento del ring buffer.
+     * @param seq   La sequenza dell'evento.
+     * @return      L'eventuale errore prodotto dall'applicazione dell'evento.
+     */
+    private Exception publishAndAwait(Slot slot, long seq) {
+        slot.waiter = Thread.currentThread();
+        slot.published = seq;
+        LockSupport.unpark(consumer);
+        boolean interrupted = false;
+        while (slot.applied != seq) {
+            LockSupport.park(this);
+            // Con il flag di interruzione attivo park ritornerebbe subito: il flag viene azzerato
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Exception error = slot.error;
+        slot.type = null;
+        slot.user = null;
+        slot.hotel = null;
+        slot.review = null;
+        slot.username = null;
+        slot.password = null;
+        slot.error = null;
+        slot.waiter = null;
+        slot.released = seq;
+        return error;
+    }
+
+    /**
+     * Ciclo del thread che applica gli eventi nell'ordine di pubblicazione.
+     * Dopo la chiusura termina solo quando ha applicato tutti gli eventi riservati prima della chiusura.
+     */
+    private void consume() {
+        // Ultime versioni degli hotel modificati nel gruppo di eventi corrente
+        Map<Integer, Hotel> touched = new LinkedHashMap<>();
+        long next = 0;
+        long batch = 0;
+        while (true) {
+            Slot slot = ring[(int) next & mask];
+            if (slot.published != next) {
+                // Nessun altro evento disponibile: conclude il gruppo corrente
+                if (batch > 0) {
+                    endBatch(touched, batch);
+                    batch = 0;
+                }
+                if (next >= endSequence) {
+                    return;
+                }
+                LockSupport.park(this);
+                // Il thread non viene interrotto dalla pipeline: un'interruzione esterna non deve farlo girare a vuoto
+                Thread.interrupted();
+                continue;
+            }
+            apply(slot, touched);
+            batch++;
+            appliedEvents++;
+            Thread waiter = slot.waiter;
+            slot.applied = next;
+            LockSupport.unpark(waiter);
+            next++;
+        }
+    }
+
+    /**
+     * Applica un evento.
+     *
+     * @param slot     L'elemento contenente l'evento.
+     * @param touched  Gli hotel modificati nel gruppo corrente, aggiornati con la nuova versione.
+     */
+    private void apply(Slot slot, Map<Integer, Hotel> touched) {
+        try {
+            switch (slot.type) {
+                case REVIEW:
+                    Hotel updated = hotelService.writeReview(slot.user, slot.hotel, slot.review);
+                    slot.user.setNumber_review();
+                    touched.put(updated.getId(), updated);
+                    break;
+                case SIGNUP:
+                    authservice.checkSignup(slot.username);
+                    authservice.signup(null, slot.username, slot.password);
+                    break;
+                case RANKING:
+                    // Le recensioni del gruppo corrente sono già nel catalogo e vengono incluse nel ricalcolo
+                    touched.clear();
+                    hotelService.updateAllRanks();
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected value: " + slot.type);
+            }
+        } catch (Exception e) {
+            slot.error = e;
+        }
+    }
+
+    /**
+     * Conclude un gruppo di eventi aggiornando una sola volta le classifiche degli hotel modificati.
+     *
+     * @param touched  Gli hotel modificati nel gruppo.
+     * @param size     Il numero di eventi del gruppo.
+     */
+    private void endBatch(Map<Integer, Hotel> touched, long size) {
+        batches++;
+        if (size > maxBatch) {
+            maxBatch = size;
+        }
+        if (!touched.isEmpty()) {
+            try {
+                hotelService.updateRanks(touched.values());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            touched.clear();
+        }
+    }
+
+    /**
+     * Chiude la pipeline dopo aver applicato gli eventi già riservati: le nuove pubblicazioni falliscono,
+     * mentre i client che hanno già riservato una sequenza ricevono l'esito del proprio evento.
+     *
+     * @param timeout  Tempo massimo di attesa in secondi.
+     * @throws InterruptedException  Se l'attesa viene interrotta.
+     */
+    public void shutdown(long timeout) throws InterruptedException {
+        long end = nextSequence.getAndSet(CLOSED);
+        if (end != CLOSED) {
+            endSequence = end;
+        }
+        LockSupport.unpark(consumer);
+        consumer.join(TimeUnit.SECONDS.toMillis(timeout));
+    }
+
+    /**
+     * Restituisce le statistiche della pipeline.
+     *
+     * @return Eventi applicati, gruppi, dimensione media e massima dei gruppi e attesa dei client per un elemento libero.
+     */
+    public String getStats() {
+        long events = appliedEvents;
+        long groups = batches;
+        return "Pipeline: events=" + events +
+                ", batches=" + groups +
+                ", avgBatch=" + (groups == 0 ? 0 : String.format("%.2f", (double) events / groups)) +
+                ", maxBatch=" + maxBatch +
+                ", producerWait=" + TimeUnit.NANOSECONDS.toMillis(producerWaitNanos.sum()) + "ms";
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dizionario che associa a ogni nome un identificativo intero, assegnato in ordine a partire da 0.
+ * Permette di memorizzare un nome ripetuto in molti oggetti (città, servizi, utenti) come intero
+ * e di risalire al nome solo quando serve. Le assegnazioni sono sincronizzate, le letture no.
+ */
+public class NameDictionary {
+
+    /** Identificativo usato per un nome assente */
+    public static final int NONE = -1;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    /** Nomi indicizzati per identificativo, sostituito da una copia più grande quando è pieno */
+    private volatile String[] names = new String[16];
+
+    /**
+     * Restituisce l'identificativo di un nome, assegnandone uno nuovo se il nome non è ancora presente.
+     *
+     * @param name Nome, può essere null.
+     * @return     L'identificativo del nome, NONE se il nome è null.
+     */
+    public int idOf(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        return assign(name);
+    }
+
+    /**
+     * Restituisce l'identificativo di un nome senza assegnarne uno nuovo.
+     *
+     * @param name Nome.
+     * @return     L'identificativo del nome, NONE se il nome non è presente.
+     */
+    public int find(String name) {
+        Integer id = ids.get(name);
+        return id == null ? NONE : id;
+    }
+
+    /**
+     * Assegna un nuovo identificativo a un nome.
+     * Il nome viene registrato prima dell'identificativo, così chi legge un identificativo trova sempre il nome.
+     *
+     * @param name Nome.
+     * @return     L'identificativo assegnato, o quello già presente.
+     */
+    private synchronized int assign(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        int next = ids.size();
+        String[] current = names;
+        if (next == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[next] = name;
+        names = current;
+        ids.put(name, next);
+        return next;
+    }
+
+    /**
+     * Restituisce il nome associato a un identificativo.
+     *
+     * @param id Identificativo del nome.
+     * @return   Il nome, null se l'identificativo è NONE.
+     */
+    public String nameOf(int id) {
+        return id == NONE ? null : names[id];
+    }
+
+    /**
+     * Restituisce il numero di nomi nel dizionario.
+     *
+     * @return Numero di nomi.
+     */
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ricompone lato client gli aggiornamenti inviati dal server su più datagrammi (vedi NotificationSender)
+ * e rileva i datagrammi persi tramite il loro numero progressivo.
+ * Ogni gruppo multicast ha una propria numerazione, per cui lo stato viene mantenuto per gruppo.
+ * I datagrammi senza intestazione, o con un'intestazione non valida, vengono restituiti così come sono.
+ */
+public class NotificationAssembler {
+
+    /** Numero massimo di parti di un aggiornamento, che limita la memoria riservata da un'intestazione */
+    private static final int MAX_PARTS = 4096;
+
+    /** Stato della ricezione di ogni gruppo, per indirizzo del gruppo */
+    private final Map<String, Channel> channels = new HashMap<>();
+    /** Numero di datagrammi persi dall'avvio */
+    private long missed;
+
+    /**
+     * Stato della ricezione di un gruppo.
+     */
+    private static final class Channel {
+        /** Numero progressivo dell'ultimo datagramma ricevuto, -1 se non ne è ancora arrivato nessuno */
+        private long lastSeq = -1;
+        /** Parti ricevute degli aggiornamenti non ancora completi, per identificativo dell'aggiornamento */
+        private final Map<Long, String[]> pending = new TreeMap<>();
+    }
+
+    /**
+     * Elabora un datagramma ricevuto.
+     *
+     * @param datagram Il contenuto del datagramma.
+     * @return         I messaggi da mostrare: gli aggiornamenti completati e gli avvisi sui datagrammi persi.
+     */
+    public synchronized List<String> accept(String datagram) {
+        List<String> output = new ArrayList<>();
+        int newline = datagram.indexOf('\n');
+        if (!datagram.startsWith(NotificationSender.HEADER + " ") || newline < 0) {
+            output.add(datagram);
+            return output;
+        }
+        String[] header = datagram.substring(0, newline).split(" ");
+        String group;
+        long seq;
+        long update;
+        int part;
+        int parts;
+        try {
+            group = header[1];
+            seq = Long.parseLong(header[2]);
+            update = Long.parseLong(header[3]);
+            part = Integer.parseInt(header[4]);
+            parts = Integer.parseInt(header[5]);
+        } catch (RuntimeException e) {
+            output.add(datagram);
+            return output;
+        }
+        // L'intestazione arriva dalla rete: i valori vengono controllati prima di modificare lo stato o allocare
+        if (seq < 0 || update < 0 || parts < 1 || parts > MAX_PARTS || part < 0 || part >= parts) {
+            output.add(datagram);
+            return output;
+        }
+
+        Channel channel = channels.computeIfAbsent(group, k -> new Channel());
+        if (channel.lastSeq >= 0 && seq <= channel.lastSeq) {
+            // Numerazione ripartita: il server è stato riavviato
+            flushIncomplete(channel, Long.MAX_VALUE, output);
+        } else if (channel.lastSeq >= 0 && seq > channel.lastSeq + 1) {
+            long lost = seq - channel.lastSeq - 1;
+            missed += lost;
+            output.add("Missed " + lost + " notification datagram(s)");
+        }
+        channel.lastSeq = seq;
+
+        // Le parti di un aggiornamento vengono inviate prima di quelle dei successivi:
+        // gli aggiornamenti precedenti ancora incompleti non possono più essere completati
+        flushIncomplete(channel, update, output);
+
+        String[] received = channel.pending.computeIfAbsent(update, k -> new String[parts]);
+        // Un aggiornamento già iniziato mantiene il numero di parti del suo primo datagramma
+        if (part < received.length) {
+            received[part] = datagram.substring(newline + 1);
+        }
+        if (isComplete(received)) {
+            channel.pending.remove(update);
+            output.add(String.join("", received));
+        }
+        return output;
+    }
+
+    /**
+     * Dimentica lo stato di un gruppo, da invocare quando il client lascia il gruppo: i datagrammi inviati
+     * mentre il client non era iscritto non vengono così segnalati come persi.
+     *
+     * @param group Indirizzo del gruppo.
+     */
+    public synchronized void forget(String group) {
+        channels.remove(group);
+    }
+
+    /**
+     * Mostra il contenuto ricevuto degli aggiornamenti incompleti di un gruppo precedenti a quello indicato e li scarta.
+     *
+     * @param channel Stato del gruppo.
+     * @param before  Identificativo del primo aggiornamento da mantenere.
+     * @param output  Messaggi da mostrare.
+     */
+    private static void flushIncomplete(Channel channel, long before, List<String> output) {
+        Iterator<Map.Entry<Long, String[]>> it = channel.pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, String[]> entry = it.next();
+            if (entry.getKey() >= before) {
+                break;
+            }
+            StringBuilder partial = new StringBuilder();
+            int count = 0;
+            for (String piece : entry.getValue()) {
+                if (piece != null) {
+                    partial.append(piece);
+                    count++;
+                }
+            }
+            output.add(partial + "\n(incomplete update: " + count + " of " + entry.getValue().length + " parts received)");
+            it.remove();
+        }
+    }
+
+    /**
+     * Verifica se tutte le parti di un aggiornamento sono state ricevute.
+     *
+     * @param received Le parti ricevute.
+     * @return         true se l'aggiornamento è completo, false altrimenti.
+     */
+    private static boolean isComplete(String[] received) {
+        for (String piece : received) {
+            if (piece == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Restituisce il numero di datagrammi persi dall'avvio.
+     *
+     * @return Numero di datagrammi persi.
+     */
+    public synchronized long getMissed() {
+        return missed;
+    }
+}
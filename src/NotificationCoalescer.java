@@ -0,0 +1,176 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Raggruppa i cambiamenti di classifica di ogni città in una finestra temporale, per evitare raffiche
+ * di notifiche quando due hotel si scambiano più volte la stessa posizione.
+ * Il primo cambiamento di una città viene inviato subito e apre la finestra; i cambiamenti successivi
+ * vengono trattenuti e, alla scadenza della finestra, viene inviato solo l'ultimo stato di ogni posizione,
+ * e solo se è diverso da quello già notificato. Se alla scadenza viene inviato qualcosa la finestra riparte,
+ * così una città che continua a cambiare riceve al più una notifica per finestra; la finestra si chiude
+ * quando scade senza nulla da inviare. Con una finestra di 0 ms i cambiamenti vengono inviati subito.
+ */
+public class NotificationCoalescer {
+
+    /**
+     * Stato della finestra di una città.
+     */
+    private static final class CityWindow {
+        /** true se la finestra è aperta e i cambiamenti vengono trattenuti */
+        private boolean open;
+        /** Ultimo cambiamento trattenuto per ogni posizione */
+        private final Map<Integer, RankChange> pending = new TreeMap<>();
+        /** ID dell'hotel notificato per ultimo per ogni posizione */
+        private final Map<Integer, Integer> emitted = new HashMap<>();
+    }
+
+    private final long window_ms;
+    private final Consumer<List<RankChange>> sink;
+    private final Map<String, CityWindow> windows = new HashMap<>();
+    private final ScheduledExecutorService timer;
+    private long emittedCount;
+    private long suppressedCount;
+
+    /**
+     * Costruttore della classe NotificationCoalescer.
+     *
+     * @param window_ms Durata della finestra di ogni città in millisecondi, 0 per non raggruppare.
+     * @param sink      Destinazione dei cambiamenti da notificare.
+     */
+    public NotificationCoalescer(long window_ms, Consumer<List<RankChange>> sink) {
+        this.window_ms = window_ms;
+        this.sink = sink;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "notification-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Riceve dei cambiamenti di classifica: quelli delle città senza una finestra aperta vengono inviati subito,
+     * gli altri vengono trattenuti fino alla chiusura della finestra.
+     * L'invio avviene tenendo il lock, così che le notifiche di una città non vengano mai inviate fuori ordine.
+     *
+     * @param changes I cambiamenti da notificare.
+     */
+    public synchronized void submit(List<RankChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (window_ms <= 0) {
+            emittedCount += changes.size();
+            sink.accept(changes);
+            return;
+        }
+        List<RankChange> now = new ArrayList<>();
+        List<String> opened = new ArrayList<>();
+        for (RankChange change : changes) {
+            String city = change.getCity();
+            CityWindow window = windows.computeIfAbsent(city, k -> new CityWindow());
+            if (window.open) {
+                if (window.pending.put(change.getPosition(), change) != null) {
+                    suppressedCount++;
+                }
+            } else {
+                emitIfChanged(window, change, now);
+                if (!opened.contains(city)) {
+                    opened.add(city);
+                }
+            }
+        }
+        // La finestra si apre dopo tutti i cambiamenti ricevuti insieme, che vengono inviati come un unico aggiornamento
+        for (String city : opened) {
+            try {
+                timer.schedule(() -> flush(city, true), window_ms, TimeUnit.MILLISECONDS);
+                windows.get(city).open = true;
+            } catch (RejectedExecutionException e) {
+                // Il coalescer è stato chiuso: la finestra resta chiusa e i cambiamenti successivi vengono inviati subito
+            }
+        }
+        if (!now.isEmpty()) {
+            sink.accept(now);
+        }
+    }
+
+    /**
+     * Invia l'ultimo stato delle posizioni di una città cambiate nella finestra. Se è stato inviato qualcosa
+     * e reopen è true la finestra riparte, altrimenti si chiude.
+     *
+     * @param city   La città.
+     * @param reopen true per far ripartire la finestra dopo un invio, false per chiuderla comunque.
+     */
+    private synchronized void flush(String city, boolean reopen) {
+        CityWindow window = windows.get(city);
+        if (window == null || !window.open) {
+            return;
+        }
+        List<RankChange> out = new ArrayList<>();
+        for (RankChange change : window.pending.values()) {
+            emitIfChanged(window, change, out);
+        }
+        window.pending.clear();
+        window.open = false;
+        if (!out.isEmpty() && reopen) {
+            // I cambiamenti appena inviati aprono una nuova finestra, come il primo cambiamento di submit
+            try {
+                timer.schedule(() -> flush(city, true), window_ms, TimeUnit.MILLISECONDS);
+                window.open = true;
+            } catch (RejectedExecutionException e) {
+                // Il coalescer è in chiusura: la finestra resta chiusa
+            }
+        }
+        if (!out.isEmpty()) {
+            sink.accept(out);
+        }
+    }
+
+    /**
+     * Aggiunge un cambiamento a quelli da inviare se la posizione non è già occupata dallo stesso hotel
+     * nell'ultima notifica, altrimenti lo conta come soppresso.
+     *
+     * @param window Finestra della città.
+     * @param change Il cambiamento.
+     * @param out    Cambiamenti da inviare.
+     */
+    private void emitIfChanged(CityWindow window, RankChange change, List<RankChange> out) {
+        Integer previous = window.emitted.put(change.getPosition(), change.getHotel().getId());
+        if (previous != null && previous == change.getHotel().getId()) {
+            suppressedCount++;
+        } else {
+            emittedCount++;
+            out.add(change);
+        }
+    }
+
+    /**
+     * Restituisce le statistiche del raggruppamento.
+     *
+     * @return Una stringa con la durata della finestra e il numero di cambiamenti inviati e soppressi.
+     */
+    public synchronized String getStats() {
+        return "Coalescing: window=" + window_ms + "ms, emitted=" + emittedCount + ", suppressed=" + suppressedCount;
+    }
+
+    /**
+     * Invia subito i cambiamenti trattenuti in tutte le finestre aperte e ferma il timer.
+     */
+    public void close() {
+        timer.shutdownNow();
+        List<String> cities;
+        synchronized (this) {
+            cities = new ArrayList<>(windows.keySet());
+        }
+        for (String city : cities) {
+            flush(city, false);
+        }
+    }
+}
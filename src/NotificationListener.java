@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+
+/**
+ * Ricezione lato client delle notifiche multicast, con un unico thread per tutta la durata della sessione.
+ * Il thread attende i datagrammi su un DatagramChannel registrato in un Selector, senza timeout né polling,
+ * li decodifica e mette in coda i messaggi da mostrare: la stampa avviene altrove e il thread
+ * non attende mai il lock della console.
+ * I gruppi possono essere cambiati in qualsiasi momento, anche prima dell'avvio.
+ */
+public class NotificationListener {
+
+    /** Dimensione del buffer di ricezione, maggiore del datagramma più grande inviato dal server */
+    private static final int BUFFER_SIZE = 2048;
+
+    private final int port;
+    private final Function<String, List<String>> decoder;
+    private final BlockingQueue<String> queue;
+    /** Gruppi a cui il canale deve essere iscritto */
+    private final Set<String> groups = new HashSet<>();
+    /** Iscrizioni attive del canale, per gruppo */
+    private final Map<String, MembershipKey> memberships = new HashMap<>();
+    private DatagramChannel channel;
+    private Selector selector;
+    private NetworkInterface networkInterface;
+    private Thread thread;
+
+    /**
+     * Costruttore della classe NotificationListener.
+     *
+     * @param port    Porta dei gruppi multicast.
+     * @param decoder Trasforma il contenuto di un datagramma nei messaggi da mostrare, eseguito dal thread di ricezione.
+     * @param queue   Coda dei messaggi da mostrare.
+     */
+    public NotificationListener(int port, Function<String, List<String>> decoder, BlockingQueue<String> queue) {
+        this.port = port;
+        this.decoder = decoder;
+        this.queue = queue;
+    }
+
+    /**
+     * Apre il canale, lo iscrive ai gruppi e avvia il thread di ricezione. Non fa nulla se è già avviato.
+     *
+     * @throws IOException Se non è possibile aprire il canale.
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        networkInterface = chooseInterface();
+        channel = DatagramChannel.open(StandardProtocolFamily.INET)
+                .setOption(StandardSocketOptions.SO_REUSEADDR, true)
+                .bind(new InetSocketAddress(port));
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        applyGroups();
+        thread = new Thread(this::receiveLoop, "notification-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Ferma il thread di ricezione e chiude il canale, lasciando tutti i gruppi.
+     * Il listener può essere riavviato con start.
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            // La chiusura del selector risveglia il thread, che termina
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        memberships.clear();
+        thread = null;
+    }
+
+    /**
+     * Imposta i gruppi a cui il canale deve essere iscritto, lasciando quelli non più richiesti.
+     *
+     * @param wanted I gruppi richiesti.
+     * @return       I gruppi non più richiesti.
+     */
+    public synchronized Set<String> setGroups(Set<String> wanted) {
+        Set<String> left = new HashSet<>(groups);
+        left.removeAll(wanted);
+        groups.clear();
+        groups.addAll(wanted);
+        if (thread != null) {
+            applyGroups();
+        }
+        return left;
+    }
+
+    /**
+     * Allinea le iscrizioni del canale ai gruppi richiesti.
+     */
+    private void applyGroups() {
+        Iterator<Map.Entry<String, MembershipKey>> it = memberships.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, MembershipKey> entry = it.next();
+            if (!groups.contains(entry.getKey())) {
+                entry.getValue().drop();
+                it.remove();
+            }
+        }
+        for (String group : groups) {
+            if (!memberships.containsKey(group)) {
+                try {
+                    memberships.put(group, channel.join(InetAddress.getByName(group), networkInterface));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Ciclo del thread di ricezione: attende che il canale sia leggibile, legge tutti i datagrammi
+     * disponibili e mette in coda i messaggi decodificati. Termina alla chiusura del selector;
+     * gli errori di decodifica di un singolo datagramma vengono segnalati e la ricezione continua.
+     */
+    private void receiveLoop() {
+        Selector selector;
+        DatagramChannel channel;
+        synchronized (this) {
+            selector = this.selector;
+            channel = this.channel;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                selector.selectedKeys().clear();
+                while (channel.receive(buffer) != null) {
+                    buffer.flip();
+                    String datagram = StandardCharsets.UTF_8.decode(buffer).toString();
+                    buffer.clear();
+                    // Un datagramma che non può essere decodificato viene scartato senza fermare la ricezione
+                    try {
+                        queue.addAll(decoder.apply(datagram));
+                    } catch (RuntimeException e) {
+                        System.out.println("Discarded notification datagram: " + e);
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // Listener fermato
+        } catch (IOException e) {
+            if (selector.isOpen()) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Sceglie l'interfaccia di rete su cui ricevere i gruppi: la prima attiva che supporta il multicast,
+     * preferendo le interfacce diverse da quella di loopback.
+     *
+     * @return L'interfaccia scelta.
+     * @throws SocketException Se nessuna interfaccia supporta il multicast.
+     */
+    private static NetworkInterface chooseInterface() throws SocketException {
+        NetworkInterface loopback = null;
+        for (NetworkInterface candidate : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (!candidate.isUp() || !candidate.supportsMulticast()) {
+                continue;
+            }
+            if (!candidate.isLoopback()) {
+                return candidate;
+            }
+            if (loopback == null) {
+                loopback = candidate;
+            }
+        }
+        if (loopback == null) {
+            throw new SocketException("No network interface supports multicast");
+        }
+        return loopback;
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registro limitato delle ultime notifiche di classifica, usato dal canale di push TCP (vedi PushServer)
+ * per inviare ai client che si riconnettono le notifiche perse.
+ * Ogni notifica riceve un numero progressivo crescente; quando il registro è pieno vengono scartate le più vecchie.
+ * La numerazione riparte a ogni avvio del server, per cui il registro è identificato da un'epoca (l'istante di creazione)
+ * che il client invia insieme all'ultimo numero ricevuto.
+ */
+public class NotificationLog {
+
+    /**
+     * Notifica registrata con il suo numero progressivo.
+     */
+    public static final class Entry {
+        private final long seq;
+        private final String text;
+
+        private Entry(long seq, String text) {
+            this.seq = seq;
+            this.text = text;
+        }
+
+        /**
+         * Restituisce il numero progressivo della notifica.
+         *
+         * @return Numero progressivo della notifica.
+         */
+        public long getSeq() {
+            return seq;
+        }
+
+        /**
+         * Restituisce il testo della notifica, su una sola riga.
+         *
+         * @return Testo della notifica.
+         */
+        public String getText() {
+            return text;
+        }
+    }
+
+    private final long epoch = System.currentTimeMillis();
+    private final int capacity;
+    private final ArrayDeque<Entry> entries;
+    /** Numero progressivo della prossima notifica */
+    private long nextSeq;
+
+    /**
+     * Costruttore della classe NotificationLog.
+     *
+     * @param capacity Numero massimo di notifiche mantenute.
+     */
+    public NotificationLog(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.entries = new ArrayDeque<>(this.capacity);
+    }
+
+    /**
+     * Registra le notifiche indicate e risveglia i thread in attesa.
+     *
+     * @param messages Le notifiche da registrare.
+     */
+    public synchronized void append(List<String> messages) {
+        for (String message : messages) {
+            if (entries.size() == capacity) {
+                entries.pollFirst();
+            }
+            // Il protocollo di push è a righe: la notifica viene scritta su una sola riga
+            entries.addLast(new Entry(nextSeq++, message.strip().replace('\n', ' ')));
+        }
+        notifyAll();
+    }
+
+    /**
+     * Restituisce le notifiche registrate successive a quella indicata, attendendo al massimo
+     * il tempo indicato se non ce ne sono. Se alcune notifiche sono già state scartate,
+     * la prima restituita ha un numero maggiore di seq + 1.
+     *
+     * @param seq       Numero dell'ultima notifica già ricevuta, -1 per averle tutte.
+     * @param timeoutMs Attesa massima in millisecondi.
+     * @return          Le notifiche successive, vuota se non ne sono arrivate entro il tempo indicato.
+     * @throws InterruptedException Se il thread viene interrotto durante l'attesa.
+     */
+    public synchronized List<Entry> awaitAfter(long seq, long timeoutMs) throws InterruptedException {
+        if (nextSeq - 1 <= seq) {
+            wait(timeoutMs);
+        }
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.seq > seq) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Restituisce il numero dell'ultima notifica registrata.
+     *
+     * @return Numero dell'ultima notifica, -1 se non ne è stata registrata nessuna.
+     */
+    public synchronized long getLastSeq() {
+        return nextSeq - 1;
+    }
+
+    /**
+     * Restituisce l'epoca del registro, che identifica l'esecuzione del server.
+     *
+     * @return L'istante di creazione del registro in millisecondi.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+}
@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Invia le notifiche sui cambiamenti delle classifiche ai gruppi multicast UDP.
+ * Il socket e gli indirizzi dei gruppi vengono creati una sola volta e riutilizzati per tutti gli invii.
+ * Le notifiche di un aggiornamento vengono raggruppate in datagrammi di dimensione limitata, in modo che
+ * nessun datagramma superi il buffer di ricezione del client. Ogni datagramma inizia con un'intestazione
+ * "#HOTELIER group seq update part parts": group è il gruppo di destinazione, seq è il numero progressivo
+ * del datagramma nel gruppo, usato dal client per rilevare i datagrammi persi, update identifica
+ * l'aggiornamento e part/parts permettono di ricomporlo (vedi NotificationAssembler).
+ * Per ogni iscrizione (il gruppo di tutte le città o quello di una città) vengono contati
+ * gli aggiornamenti, le notifiche e i datagrammi inviati.
+ */
+public class NotificationSender {
+
+    /** Prefisso dell'intestazione dei datagrammi */
+    public static final String HEADER = "#HOTELIER";
+    /** Dimensione massima di un datagramma in byte, inferiore al buffer di ricezione del client */
+    private static final int MAX_DATAGRAM = 1200;
+    /** Spazio riservato all'intestazione */
+    private static final int MAX_HEADER = 80;
+
+    private final int UDP_port;
+    private DatagramSocket socket;
+    /** Stato dei gruppi di destinazione, per indirizzo */
+    private final Map<String, Channel> channels = new LinkedHashMap<>();
+
+    /**
+     * Stato di un gruppo di destinazione: indirizzo risolto, numerazione e contatori degli invii.
+     */
+    private static final class Channel {
+        private final String label;
+        private InetAddress group;
+        /** Numero progressivo del prossimo datagramma */
+        private long seq;
+        /** Identificativo del prossimo aggiornamento */
+        private long update;
+        private long messages;
+        private long datagrams;
+
+        private Channel(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Costruttore della classe NotificationSender. Il socket viene aperto al primo invio.
+     *
+     * @param UDP_port Porta dei gruppi multicast.
+     */
+    public NotificationSender(int UDP_port) {
+        this.UDP_port = UDP_port;
+    }
+
+    /**
+     * Invia a un gruppo un aggiornamento composto da più notifiche, raggruppandole nel minor numero di datagrammi.
+     * Una notifica più grande di un datagramma viene divisa su più datagrammi.
+     *
+     * @param label    Nome dell'iscrizione a cui corrisponde il gruppo, usato nelle statistiche.
+     * @param groupAddr Indirizzo del gruppo multicast.
+     * @param messages Le notifiche dell'aggiornamento.
+     */
+    public synchronized void send(String label, String groupAddr, List<String> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        List<String> payloads = pack(messages);
+        Channel channel = channels.computeIfAbsent(groupAddr, k -> new Channel(label));
+        long id = channel.update++;
+        channel.messages += messages.size();
+        try {
+            if (socket == null) {
+                socket = new DatagramSocket();
+            }
+            if (channel.group == null) {
+                channel.group = InetAddress.getByName(groupAddr);
+            }
+            for (int part = 0; part < payloads.size(); part++) {
+                String datagram = HEADER + " " + groupAddr + " " + channel.seq++ + " " + id + " " + part + " " + payloads.size()
+                        + "\n" + payloads.get(part);
+                byte[] msg = datagram.getBytes(StandardCharsets.UTF_8);
+                socket.send(new DatagramPacket(msg, msg.length, channel.group, UDP_port));
+                channel.datagrams++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            // Il socket viene ricreato al prossimo invio
+            close();
+        }
+    }
+
+    /**
+     * Raggruppa le notifiche in blocchi che rientrano in un datagramma.
+     *
+     * @param messages Le notifiche da raggruppare.
+     * @return         I blocchi di testo, uno per datagramma.
+     */
+    private static List<String> pack(List<String> messages) {
+        int limit = MAX_DATAGRAM - MAX_HEADER;
+        List<String> payloads = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int currentBytes = 0;
+        for (String message : messages) {
+            for (String piece : split(message, limit)) {
+                int bytes = piece.getBytes(StandardCharsets.UTF_8).length;
+                if (currentBytes + bytes > limit && currentBytes > 0) {
+                    payloads.add(current.toString());
+                    current.setLength(0);
+                    currentBytes = 0;
+                }
+                current.append(piece);
+                currentBytes += bytes;
+            }
+        }
+        if (currentBytes > 0) {
+            payloads.add(current.toString());
+        }
+        return payloads;
+    }
+
+    /**
+     * Divide una notifica in parti che, codificate in UTF-8, non superano il limite indicato,
+     * senza dividere le coppie di caratteri surrogati.
+     *
+     * @param message La notifica.
+     * @param limit   Dimensione massima di una parte in byte.
+     * @return        Le parti della notifica.
+     */
+    private static List<String> split(String message, int limit) {
+        List<String> pieces = new ArrayList<>();
+        // Un carattere occupa al più 4 byte in UTF-8
+        int chars = limit / 4;
+        int start = 0;
+        while (message.length() - start > chars) {
+            int end = start + chars;
+            if (Character.isHighSurrogate(message.charAt(end - 1))) {
+                end--;
+            }
+            pieces.add(message.substring(start, end));
+            start = end;
+        }
+        pieces.add(message.substring(start));
+        return pieces;
+    }
+
+    /**
+     * Restituisce le statistiche degli invii, in totale e per ogni iscrizione.
+     *
+     * @return Una stringa con il numero di aggiornamenti, notifiche e datagrammi inviati.
+     */
+    public synchronized String getStats() {
+        long updates = 0;
+        long datagrams = 0;
+        StringBuilder perChannel = new StringBuilder();
+        for (Channel channel : channels.values()) {
+            updates += channel.update;
+            datagrams += channel.datagrams;
+            perChannel.append(perChannel.length() == 0 ? "" : ", ").append(channel.label)
+                    .append("=").append(channel.update).append("/").append(channel.messages).append("/").append(channel.datagrams);
+        }
+        return "Notifications: updates=" + updates + ", datagrams=" + datagrams
+                + " [updates/changes/datagrams per subscription: " + perChannel + "]";
+    }
+
+    /**
+     * Chiude il socket di invio.
+     */
+    public synchronized void close() {
+        if (socket != null) {
+            socket.close();
+            socket = null;
+        }
+    }
+}
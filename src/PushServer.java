@@ -0,0 +1,173 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canale di push TCP affidabile per le notifiche di classifica, alternativo al multicast UDP.
+ * Il client apre una connessione dedicata e invia "SINCE epoch seq" con l'ultima notifica ricevuta
+ * (oppure solo "SINCE" per ricevere solo le notifiche nuove). Il server risponde "#EPOCH epoch",
+ * invia le notifiche successive presenti nel NotificationLog come righe "seq testo" e poi quelle nuove man mano
+ * che arrivano. Se l'epoca non coincide il server è stato riavviato e vengono inviate tutte le notifiche registrate;
+ * se il registro ha già scartato alcune notifiche richieste viene inviato "#MISSED n".
+ * In assenza di notifiche viene inviato periodicamente "#PING", per accorgersi dei client disconnessi.
+ * Le connessioni sono servite da thread propri, per non contare come client attivi nel controllo di inattività.
+ */
+public class PushServer {
+
+    /** Intervallo dei messaggi di controllo in assenza di notifiche, in millisecondi */
+    private static final long PING_INTERVAL = 15_000;
+
+    private final ServerSocket serverSocket;
+    private final NotificationLog log;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Costruttore della classe PushServer. Apre il socket, le connessioni vengono accettate dopo start.
+     *
+     * @param port Porta del canale di push.
+     * @param log  Registro delle notifiche da inviare.
+     * @throws IOException Se non è possibile aprire il socket.
+     */
+    public PushServer(int port, NotificationLog log) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.log = log;
+    }
+
+    /**
+     * Avvia il thread che accetta le connessioni dei client.
+     */
+    public void start() {
+        Thread acceptor = new Thread(this::acceptLoop, "push-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Accetta le connessioni dei client, servendo ognuna con un thread dedicato.
+     */
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                clients.add(socket);
+                Thread worker = new Thread(() -> serve(socket), "push-client");
+                worker.setDaemon(true);
+                worker.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Serve un client: legge la richiesta iniziale, invia le notifiche perse e poi quelle nuove.
+     *
+     * @param socket Il socket del client.
+     */
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), false, StandardCharsets.UTF_8)) {
+
+            String request = in.readLine();
+            if (request == null) {
+                return;
+            }
+            String[] parts = request.trim().split("\\s+");
+            if (!parts[0].equals("SINCE")) {
+                return;
+            }
+            long last;
+            try {
+                if (parts.length < 3) {
+                    // Nuovo client: solo le notifiche successive alla connessione
+                    last = log.getLastSeq();
+                } else if (Long.parseLong(parts[1]) != log.getEpoch()) {
+                    // Il server è stato riavviato: tutte le notifiche di questa esecuzione
+                    last = -1;
+                } else {
+                    last = Long.parseLong(parts[2]);
+                }
+            } catch (NumberFormatException e) {
+                return;
+            }
+            out.println("#EPOCH " + log.getEpoch());
+            out.flush();
+
+            // Le notifiche registrate prima della connessione vengono contate come reinviate
+            long replayUntil = log.getLastSeq();
+            long lastWrite = System.currentTimeMillis();
+            while (!closed) {
+                List<NotificationLog.Entry> entries = log.awaitAfter(last, PING_INTERVAL);
+                if (entries.isEmpty()) {
+                    if (System.currentTimeMillis() - lastWrite < PING_INTERVAL) {
+                        continue;
+                    }
+                    out.println("#PING");
+                } else {
+                    if (entries.get(0).getSeq() > last + 1) {
+                        out.println("#MISSED " + (entries.get(0).getSeq() - last - 1));
+                    }
+                    for (NotificationLog.Entry entry : entries) {
+                        out.println(entry.getSeq() + " " + entry.getText());
+                        (entry.getSeq() <= replayUntil ? replayed : sent).incrementAndGet();
+                    }
+                    last = entries.get(entries.size() - 1).getSeq();
+                }
+                out.flush();
+                lastWrite = System.currentTimeMillis();
+                if (out.checkError()) {
+                    // Il client si è disconnesso
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Il client si è disconnesso
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            clients.remove(socket);
+        }
+    }
+
+    /**
+     * Restituisce le statistiche del canale di push.
+     *
+     * @return Una stringa con il numero di client connessi e di notifiche inviate e reinviate.
+     */
+    public String getStats() {
+        return "Push: clients=" + clients.size() + ", sent=" + sent.get() + ", replayed=" + replayed.get();
+    }
+
+    /**
+     * Chiude il canale di push e le connessioni dei client.
+     */
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Socket socket : clients) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Connessione già chiusa
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Classe che rappresenta il cambio dell'hotel in una posizione della classifica di una città.
+ */
+public class RankChange {
+
+    private final String city;
+    private final int position;
+    private final Hotel hotel;
+
+    /**
+     * Costruttore della classe RankChange.
+     *
+     * @param city      Città della classifica.
+     * @param position  Posizione in classifica, a partire da 1.
+     * @param hotel     Hotel che occupa ora la posizione.
+     */
+    public RankChange(String city, int position, Hotel hotel) {
+        this.city = city;
+        this.position = position;
+        this.hotel = hotel;
+    }
+
+    /**
+     * Restituisce la città della classifica.
+     *
+     * @return Città della classifica.
+     */
+    public String getCity() {
+        return city;
+    }
+
+    /**
+     * Restituisce la posizione in classifica.
+     *
+     * @return Posizione in classifica, a partire da 1.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Restituisce l'hotel che occupa ora la posizione.
+     *
+     * @return Hotel in classifica.
+     */
+    public Hotel getHotel() {
+        return hotel;
+    }
+
+    /**
+     * Restituisce il messaggio di notifica del cambio di posizione.
+     *
+     * @return Messaggio da inviare ai client.
+     */
+    public String toMessage() {
+        return "\n" + ordinal(position) + " ranked Hotel in " + city + " is now " + hotel.getName();
+    }
+
+    /**
+     * Restituisce la forma ordinale inglese di un numero (1st, 2nd, 3rd, 4th...).
+     *
+     * @param n Numero da convertire.
+     * @return  Forma ordinale del numero.
+     */
+    private static String ordinal(int n) {
+        if (n % 100 >= 11 && n % 100 <= 13) {
+            return n + "th";
+        }
+        switch (n % 10) {
+            case 1:
+                return n + "st";
+            case 2:
+                return n + "nd";
+            case 3:
+                return n + "rd";
+            default:
+                return n + "th";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RankChange{" +
+                "city='" + city + '\'' +
+                ", position=" + position +
+                ", hotel=" + hotel.getName() +
+                '}';
+    }
+}
@@ -1,15 +1,19 @@
 import com.google.gson.Gson;
+import com.google.gson.annotations.JsonAdapter;
 import java.io.Serializable;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 
 /**
  * Classe che rappresenta una recensione nel sistema HOTELIER.
  */
 public class Review implements Serializable {
+    /** Gson condiviso per la rappresentazione JSON delle recensioni */
+    private static final Gson GSON = new Gson();
+
     private Ratings ratings;
     private float rate;
-    private Date date;
+    /** Data della recensione in millisecondi dall'epoch, salvata su file nel formato del file degli hotel */
+    @JsonAdapter(DateFormats.ReviewDateAdapter.class)
+    private long date;
     private String user;
 
     /**
@@ -24,7 +28,22 @@ public class Review implements Serializable {
         this.user = user;
         this.ratings = ratings;
         this.rate = rate;
-        this.date = new Date();
+        this.date = System.currentTimeMillis();
+    }
+
+    /**
+     * Costruttore che consente di inizializzare una recensione con tutte le sue informazioni.
+     *
+     * @param user    Nome dell'utente che ha scritto la recensione.
+     * @param rate    Punteggio sintetico assegnato alla recensione.
+     * @param ratings Oggetto Ratings contenente i punteggi dettagliati.
+     * @param date    Data della recensione in millisecondi dall'epoch.
+     */
+    public Review(String user, float rate, Ratings ratings, long date) {
+        this.user = user;
+        this.ratings = ratings;
+        this.rate = rate;
+        this.date = date;
     }
 
     /**
@@ -54,9 +73,9 @@ public class Review implements Serializable {
     /**
      * Restituisce la data in cui è stata creata la recensione.
      *
-     * @return Data della recensione.
+     * @return Data della recensione in millisecondi dall'epoch.
      */
-    public Date getDate() {
+    public long getDate() {
         return this.date;
     }
 
@@ -90,9 +109,9 @@ public class Review implements Serializable {
     /**
      * Imposta la data della recensione.
      *
-     * @param date Data della recensione.
+     * @param date Data della recensione in millisecondi dall'epoch.
      */
-    public void setDate(Date date) {
+    public void setDate(long date) {
         this.date = date;
     }
 
@@ -112,8 +131,7 @@ public class Review implements Serializable {
      */
     @Override
     public String toString() {
-        Gson gson = new Gson();
-        return gson.toJson(this);
+        return GSON.toJson(this);
     }
 
     /**
@@ -122,8 +140,7 @@ public class Review implements Serializable {
      * @return Una stringa formattata con la recensione.
      */
     public String printPretty() {
-        
-        SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+
         String man = "\uD83D\uDC64";
         String clock = "\uD83D\uDD52";
         String star = "\u2B50";      
@@ -131,7 +148,7 @@ public class Review implements Serializable {
    
         StringBuilder stringBuilder = new StringBuilder();
         stringBuilder.append("\n").append("| ").append(man).append(" User: ").append(user).append("\n")
-                .append("| ").append(clock).append(" Date: ").append(dateFormat.format(date)).append("\n")
+                .append("| ").append(clock).append(" Date: ").append(DateFormats.format(DateFormats.REVIEW_DISPLAY, date)).append("\n")
                 .append("| ").append(star).append(" Overall Rating: ").append(rate).append("\n")
                 .append("| ").append(graph).append(" Ratings \n").append(ratings.prettyPrint());
         return stringBuilder.toString();
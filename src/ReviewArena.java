@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocatore della memoria fuori dall'heap usata dai registri delle recensioni.
+ * Per default ogni blocco è un ByteBuffer diretto: nell'heap resta solo l'oggetto ByteBuffer, per cui
+ * le pause del garbage collector non crescono con il numero di recensioni.
+ * In alternativa la memoria può essere presa da un file mappato in memoria, così la storia delle
+ * recensioni può superare la memoria disponibile e viene gestita dalla cache del sistema operativo.
+ * Il file mappato è un'area di lavoro ricreata ad ogni avvio: la persistenza resta il file JSON.
+ * Ogni blocco appartiene a un oggetto (il registro delle recensioni) e viene rilasciato quando il proprietario
+ * non è più raggiungibile: un blocco diretto viene poi liberato dal garbage collector, mentre un blocco
+ * del file mappato viene conservato e riusato per la successiva allocazione della stessa dimensione.
+ */
+public final class ReviewArena {
+
+    /** Dimensione delle regioni mappate dal file */
+    private static final int SLAB_SIZE = 1 << 20;
+
+    /** Canale del file mappato, null se si usa la memoria diretta */
+    private static FileChannel channel;
+    /** Regione mappata corrente da cui vengono presi i blocchi */
+    private static ByteBuffer slab;
+    /** Byte del file già mappati */
+    private static long mapped;
+    /** Byte allocati fuori dall'heap e non ancora rilasciati */
+    private static final AtomicLong allocated = new AtomicLong();
+    /** Blocchi del file mappato rilasciati, per dimensione in byte */
+    private static final Map<Integer, ArrayDeque<ByteBuffer>> free = new HashMap<>();
+    /** Rilascia i blocchi dei proprietari non più raggiungibili */
+    private static final Cleaner cleaner = Cleaner.create();
+
+    /**
+     * Costruttore privato: la classe contiene solo metodi statici.
+     */
+    private ReviewArena() {
+    }
+
+    /**
+     * Usa un file mappato in memoria per i blocchi allocati da questo momento in poi.
+     * Il contenuto precedente del file viene scartato.
+     *
+     * @param file  Percorso del file.
+     * @throws IOException  Se il file non può essere creato o aperto.
+     */
+    public static synchronized void mapTo(String file) throws IOException {
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        slab = null;
+        mapped = 0;
+        free.clear();
+    }
+
+    /**
+     * Alloca un blocco di memoria fuori dall'heap, con l'ordine dei byte nativo. Il blocco viene rilasciato
+     * quando il proprietario non è più raggiungibile.
+     *
+     * @param owner Oggetto che usa il blocco.
+     * @param bytes Dimensione del blocco in byte, al più SLAB_SIZE.
+     * @return      Il blocco allocato.
+     */
+    public static ByteBuffer allocate(Object owner, int bytes) {
+        ByteBuffer block = null;
+        FileChannel source;
+        synchronized (ReviewArena.class) {
+            source = channel;
+            if (source != null) {
+                block = allocateMapped(bytes);
+            }
+        }
+        if (block == null) {
+            block = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+        allocated.addAndGet(bytes);
+        // L'azione non deve riferire il proprietario, altrimenti resterebbe sempre raggiungibile
+        cleaner.register(owner, new Release(block, source));
+        return block;
+    }
+
+    /**
+     * Rilascia un blocco: se appartiene al file mappato ancora in uso viene conservato per essere riusato,
+     * altrimenti viene lasciato al garbage collector.
+     *
+     * @param block  Il blocco da rilasciare.
+     * @param source Il canale del file da cui è stato preso il blocco, null per un blocco diretto.
+     */
+    private static void release(ByteBuffer block, FileChannel source) {
+        allocated.addAndGet(-block.capacity());
+        synchronized (ReviewArena.class) {
+            if (source != null && source == channel) {
+                free.computeIfAbsent(block.capacity(), k -> new ArrayDeque<>()).push(block);
+            }
+        }
+    }
+
+    /**
+     * Azione eseguita quando il proprietario di un blocco non è più raggiungibile.
+     */
+    private static final class Release implements Runnable {
+        private final ByteBuffer block;
+        private final FileChannel source;
+
+        private Release(ByteBuffer block, FileChannel source) {
+            this.block = block;
+            this.source = source;
+        }
+
+        @Override
+        public void run() {
+            release(block, source);
+        }
+    }
+
+    /**
+     * Riusa un blocco rilasciato della stessa dimensione oppure prende un blocco dalla regione mappata corrente,
+     * mappandone una nuova se non c'è abbastanza spazio.
+     *
+     * @param bytes Dimensione del blocco in byte.
+     * @return      Il blocco allocato.
+     */
+    private static ByteBuffer allocateMapped(int bytes) {
+        ArrayDeque<ByteBuffer> released = free.get(bytes);
+        if (released != null && !released.isEmpty()) {
+            return released.pop();
+        }
+        if (slab == null || slab.remaining() < bytes) {
+            try {
+                slab = channel.map(FileChannel.MapMode.READ_WRITE, mapped, SLAB_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            mapped += SLAB_SIZE;
+        }
+        ByteBuffer block = slab.slice(slab.position(), bytes).order(ByteOrder.nativeOrder());
+        slab.position(slab.position() + bytes);
+        return block;
+    }
+
+    /**
+     * Restituisce il numero di byte allocati fuori dall'heap e non ancora rilasciati.
+     *
+     * @return Numero di byte in uso.
+     */
+    public static long getAllocatedBytes() {
+        return allocated.get();
+    }
+}
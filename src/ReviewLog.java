@@ -0,0 +1,231 @@
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Registro delle recensioni di un hotel in cui le recensioni possono essere solo aggiunte in coda.
+ * Le recensioni sono record a layout fisso memorizzati fuori dall'heap (vedi ReviewArena), in blocchi
+ * che non vengono mai ricopiati. I blocchi sono allocati solo quando servono e la loro dimensione raddoppia
+ * da FIRST_CHUNK a MAX_CHUNK recensioni, per cui un hotel con poche recensioni occupa poca memoria.
+ * I blocchi tornano all'allocatore quando il registro non è più raggiungibile. Ogni record contiene punteggio sintetico, le quattro
+ * valutazioni, l'identificativo dell'autore (vedi UserDictionary) e la data in millisecondi, oltre alla
+ * somma cumulativa dei punteggi e alla media delle date fino al record stesso: gli aggregati usati per lo
+ * score di una versione dell'hotel si leggono così in tempo costante, senza oggetti nell'heap.
+ * Per le date viene mantenuta la media e non la somma, che in millisecondi supererebbe il valore massimo
+ * di un long dopo pochi milioni di recensioni.
+ * Gli oggetti Review vengono creati solo quando una recensione viene letta, ad esempio per essere mostrata
+ * o salvata su file. L'aggiunta costa tempo costante e più versioni dello stesso hotel possono condividere
+ * il registro, ognuna vedendone solo le prime recensioni. Le aggiunte sono sincronizzate, le letture no.
+ */
+public class ReviewLog {
+
+    /** Numero di recensioni del primo blocco, una potenza di due */
+    private static final int FIRST_CHUNK = 8;
+    /** Numero massimo di recensioni di un blocco, una potenza di due */
+    private static final int MAX_CHUNK = 256;
+    /** Numero di blocchi di dimensione crescente, da FIRST_CHUNK a MAX_CHUNK */
+    private static final int GROWING_CHUNKS =
+            Integer.numberOfLeadingZeros(FIRST_CHUNK) - Integer.numberOfLeadingZeros(MAX_CHUNK) + 1;
+    /** Numero di recensioni contenute nei blocchi di dimensione crescente */
+    private static final int GROWING_RECORDS = 2 * MAX_CHUNK - FIRST_CHUNK;
+
+    /** Layout di un record: offset dei campi in byte */
+    private static final int RATE = 0;
+    private static final int CLEANING = 4;
+    private static final int POSITION = 8;
+    private static final int SERVICES = 12;
+    private static final int QUALITY = 16;
+    private static final int USER = 20;
+    private static final int DATE = 24;
+    private static final int SUM_RATES = 32;
+    private static final int MEAN_DATE = 40;
+    /** Dimensione di un record in byte */
+    private static final int RECORD_SIZE = 48;
+
+    /** Indice dei blocchi, sostituito da una copia più grande quando è pieno */
+    private volatile ByteBuffer[] chunks = new ByteBuffer[4];
+    /** Numero di recensioni nel registro, scritto dopo la recensione per renderla visibile ai lettori */
+    private volatile int size;
+
+    /**
+     * Restituisce il numero di recensioni nel registro.
+     *
+     * @return Numero di recensioni.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Aggiunge una recensione in coda al registro, copiandone i valori in un nuovo record.
+     *
+     * @param review Recensione da aggiungere.
+     * @return       Il numero di recensioni nel registro dopo l'aggiunta.
+     */
+    public synchronized int append(Review review) {
+        int index = size;
+        int chunk = chunkIndex(index);
+        ByteBuffer[] current = chunks;
+        if (chunk == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[chunk] == null) {
+            current[chunk] = ReviewArena.allocate(this, chunkRecords(chunk) * RECORD_SIZE);
+        }
+        ByteBuffer c = current[chunk];
+        int base = base(index);
+        long date = review.getDate();
+        c.putFloat(base + RATE, review.getrate());
+        // Un blocco riusato contiene i record di un altro registro, per cui ogni campo viene scritto
+        Ratings ratings = review.getRatings();
+        c.putFloat(base + CLEANING, ratings != null ? ratings.getCleaning() : 0);
+        c.putFloat(base + POSITION, ratings != null ? ratings.getPosition() : 0);
+        c.putFloat(base + SERVICES, ratings != null ? ratings.getServices() : 0);
+        c.putFloat(base + QUALITY, ratings != null ? ratings.getQuality() : 0);
+        c.putInt(base + USER, UserDictionary.idOf(review.getUser()));
+        c.putLong(base + DATE, date);
+        c.putDouble(base + SUM_RATES, sumRates(index) + review.getrate());
+        c.putDouble(base + MEAN_DATE, nextMean(meanDate(index), date, index + 1));
+        chunks = current;
+        size = index + 1;
+        return index + 1;
+    }
+
+    /**
+     * Restituisce il blocco che contiene una recensione.
+     *
+     * @param index Posizione della recensione.
+     * @return      Il blocco.
+     */
+    private ByteBuffer chunk(int index) {
+        return chunks[chunkIndex(index)];
+    }
+
+    /**
+     * Restituisce il numero del blocco che contiene una recensione. Nei blocchi di dimensione crescente
+     * la recensione index + FIRST_CHUNK si trova nel blocco dato dalla sua potenza di due più alta.
+     *
+     * @param index Posizione della recensione.
+     * @return      Il numero del blocco.
+     */
+    private static int chunkIndex(int index) {
+        if (index < GROWING_RECORDS) {
+            return Integer.numberOfLeadingZeros(FIRST_CHUNK) - Integer.numberOfLeadingZeros(index + FIRST_CHUNK);
+        }
+        return GROWING_CHUNKS + (index - GROWING_RECORDS) / MAX_CHUNK;
+    }
+
+    /**
+     * Restituisce il numero di recensioni contenute in un blocco.
+     *
+     * @param chunk Numero del blocco.
+     * @return      Il numero di recensioni.
+     */
+    private static int chunkRecords(int chunk) {
+        return chunk < GROWING_CHUNKS ? FIRST_CHUNK << chunk : MAX_CHUNK;
+    }
+
+    /**
+     * Restituisce l'offset del record di una recensione nel suo blocco.
+     *
+     * @param index Posizione della recensione.
+     * @return      L'offset in byte.
+     */
+    private static int base(int index) {
+        int offset;
+        if (index < GROWING_RECORDS) {
+            offset = index + FIRST_CHUNK - (FIRST_CHUNK << chunkIndex(index));
+        } else {
+            offset = (index - GROWING_RECORDS) % MAX_CHUNK;
+        }
+        return offset * RECORD_SIZE;
+    }
+
+    /**
+     * Restituisce la somma dei punteggi sintetici delle prime recensioni.
+     *
+     * @param count Numero di recensioni.
+     * @return      La somma dei punteggi.
+     */
+    public double sumRates(int count) {
+        return count == 0 ? 0 : chunk(count - 1).getDouble(base(count - 1) + SUM_RATES);
+    }
+
+    /**
+     * Restituisce la media delle date in millisecondi delle prime recensioni.
+     *
+     * @param count Numero di recensioni.
+     * @return      La media delle date, 0 se non ci sono recensioni.
+     */
+    public double meanDate(int count) {
+        return count == 0 ? 0 : chunk(count - 1).getDouble(base(count - 1) + MEAN_DATE);
+    }
+
+    /**
+     * Aggiorna una media con un nuovo valore, senza calcolare la somma dei valori.
+     *
+     * @param mean  Media dei valori precedenti.
+     * @param value Nuovo valore.
+     * @param count Numero di valori compreso il nuovo.
+     * @return      La media aggiornata.
+     */
+    public static double nextMean(double mean, long value, int count) {
+        return mean + (value - mean) / count;
+    }
+
+    /**
+     * Crea la recensione in una determinata posizione a partire dal suo record.
+     *
+     * @param index Posizione della recensione.
+     * @return      La recensione.
+     */
+    private Review get(int index) {
+        ByteBuffer c = chunk(index);
+        int base = base(index);
+        Ratings ratings = new Ratings(c.getFloat(base + CLEANING), c.getFloat(base + POSITION),
+                c.getFloat(base + SERVICES), c.getFloat(base + QUALITY));
+        return new Review(UserDictionary.nameOf(c.getInt(base + USER)), c.getFloat(base + RATE), ratings,
+                c.getLong(base + DATE));
+    }
+
+    /**
+     * Restituisce una vista non modificabile delle prime recensioni del registro.
+     * La vista non cambia con le aggiunte successive.
+     *
+     * @param count Numero di recensioni della vista.
+     * @return      La lista delle prime count recensioni.
+     */
+    public List<Review> view(int count) {
+        if (count > size) {
+            throw new IndexOutOfBoundsException("View of " + count + " reviews, log has " + size);
+        }
+        return new View(this, count);
+    }
+
+    /**
+     * Vista non modificabile delle prime recensioni di un registro.
+     */
+    private static final class View extends AbstractList<Review> {
+        private final ReviewLog log;
+        private final int count;
+
+        private View(ReviewLog log, int count) {
+            this.log = log;
+            this.count = count;
+        }
+
+        @Override
+        public Review get(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+            }
+            return log.get(index);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
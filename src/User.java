@@ -1,5 +1,6 @@
 import java.io.Serializable;
-import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Classe che rappresenta un utente del sistema, con informazioni come nome utente, password, badge e numero di recensioni.
@@ -7,10 +8,18 @@ import java.util.Objects;
  */
 public class User implements Serializable {
 
+    // Aggiornamento atomico del badge: lo stesso oggetto User è condiviso tra cache, sessioni e salvataggi
+    private static final AtomicReferenceFieldUpdater<User, Badge> BADGE =
+            AtomicReferenceFieldUpdater.newUpdater(User.class, Badge.class, "badge");
+
     private final String username;
     private final String password;
-    private Badge badge;
-    private int number_review;
+    // Identificativo del nome utente nel dizionario degli utenti più uno, 0 se non ancora assegnato
+    // (gli utenti letti con Gson non passano dai costruttori)
+    private transient int dictionaryId;
+    // Badge immutabile, sostituito solo con compare-and-set
+    private volatile Badge badge;
+    private final AtomicInteger number_review;
 
     /**
      * Costruttore che inizializza un nuovo utente con nome utente e password specificati, assegnando un badge di livello RECENSORE e inizializzando il numero di recensioni a 0.
@@ -21,8 +30,9 @@ public class User implements Serializable {
     public User(String username, String password) {
         this.username = username;
         this.password = password;
+        this.dictionaryId = UserDictionary.idOf(username) + 1;
         this.badge = new Badge(Level.RECENSORE);
-        this.number_review = 0;
+        this.number_review = new AtomicInteger();
     }
 
     /**
@@ -36,8 +46,9 @@ public class User implements Serializable {
     public User(String username, String password, Badge badge, int number_review) {
         this.username = username;
         this.password = password;
+        this.dictionaryId = UserDictionary.idOf(username) + 1;
         this.badge = badge;
-        this.number_review = number_review;
+        this.number_review = new AtomicInteger(number_review);
     }
 
     /**
@@ -49,6 +60,21 @@ public class User implements Serializable {
         return this.username;
     }
 
+    /**
+     * Restituisce l'identificativo dell'utente nel dizionario degli utenti.
+     *
+     * @return Identificativo dell'utente.
+     */
+    public int getId() {
+        int id = this.dictionaryId;
+        if (id == 0) {
+            // L'assegnazione è idempotente, per cui più thread possono eseguirla senza sincronizzazione
+            id = UserDictionary.idOf(username) + 1;
+            this.dictionaryId = id;
+        }
+        return id - 1;
+    }
+
     /**
      * Restituisce l'oggetto User stesso.
      *
@@ -82,28 +108,30 @@ public class User implements Serializable {
      * @return Numero di recensioni dell'utente.
      */
     public int getNumber_review() {
-        return this.number_review;
+        return this.number_review.get();
     }
 
     /**
-     * Imposta il badge dell'utente con un livello specificato.
+     * Imposta il badge dell'utente con un livello specificato, se superiore a quello attuale.
+     * Come per le promozioni dovute alle recensioni, il badge non viene mai abbassato.
      *
      * @param level Livello da associare al badge dell'utente.
      */
     public void setBadge(Level level) {
-        this.badge = new Badge(level);
+        promote(level);
     }
 
     /**
      * Incrementa il numero di recensioni dell'utente e aggiorna il badge corrispondente.
+     * L'incremento è atomico, per cui le recensioni inviate da più sessioni non vengono perse.
      */
     public void setNumber_review() {
-        this.number_review = this.number_review + 1;
-        updateBadge();
+        promote(levelFor(this.number_review.incrementAndGet()));
     }
 
     /**
-     * Override del metodo equals per consentire il confronto tra oggetti User in base al nome utente.
+     * Override del metodo equals per consentire il confronto tra oggetti User in base al nome utente,
+     * confrontandone gli identificativi.
      *
      * @param obj Oggetto da confrontare con l'utente corrente.
      * @return true se i due oggetti User hanno lo stesso nome utente, false altrimenti.
@@ -113,17 +141,17 @@ public class User implements Serializable {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         User user = (User) obj;
-        return username.equals(user.username);
+        return getId() == user.getId();
     }
 
     /**
-     * Override del metodo hashCode per generare un codice hash basato sul nome utente dell'utente.
+     * Override del metodo hashCode per generare un codice hash basato sull'identificativo dell'utente.
      *
      * @return Codice hash generato.
      */
     @Override
     public int hashCode() {
-        return Objects.hash(username);
+        return getId();
     }
 
     /**
@@ -144,16 +172,42 @@ public class User implements Serializable {
      * Aggiorna il badge dell'utente in base al numero di recensioni effettuate.
      */
     public void updateBadge() {
-        if (this.number_review > Level.CONTRIBUTORE_SUPER.getValue()) {
-            return;
-        } else if (this.number_review >= Level.CONTRIBUTORE_SUPER.getValue()) {
-            this.badge.setLevel(Level.CONTRIBUTORE_SUPER);
-        } else if (this.number_review >= Level.CONTRIBUTORE_ESPERTO.getValue()) {
-            this.badge.setLevel(Level.CONTRIBUTORE_ESPERTO);
-        } else if (this.number_review >= Level.CONTRIBUTORE.getValue()) {
-            this.badge.setLevel(Level.CONTRIBUTORE);
-        } else if (this.number_review >= Level.RECENSORE_ESPERTO.getValue()) {
-            this.badge.setLevel(Level.RECENSORE_ESPERTO);
+        promote(levelFor(this.number_review.get()));
+    }
+
+    /**
+     * Restituisce il livello corrispondente a un numero di recensioni.
+     *
+     * @param number_review Numero di recensioni.
+     * @return Il livello più alto raggiunto con quel numero di recensioni.
+     */
+    private static Level levelFor(int number_review) {
+        Level reached = Level.RECENSORE;
+        for (Level level : Level.values()) {
+            if (number_review >= level.getValue()) {
+                reached = level;
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Promuove il badge al livello indicato con compare-and-set.
+     * Il livello non viene mai abbassato: se un altro thread ha già installato un badge uguale o superiore,
+     * la promozione viene ignorata, per cui un aggiornamento in ritardo non sovrascrive un badge più recente.
+     *
+     * @param level Livello da raggiungere.
+     */
+    private void promote(Level level) {
+        while (true) {
+            Badge current = this.badge;
+            // Gli utenti letti con Gson senza badge non ne hanno ancora uno
+            if (current != null && current.getLevel().getValue() >= level.getValue()) {
+                return;
+            }
+            if (BADGE.compareAndSet(this, current, new Badge(level))) {
+                return;
+            }
         }
     }
 }
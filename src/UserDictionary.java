@@ -0,0 +1,49 @@
+/**
+ * Dizionario che associa a ogni nome utente un identificativo intero, assegnato in ordine a partire da 0.
+ * Permette di memorizzare l'autore di una recensione e la chiave delle cache degli utenti come intero,
+ * risalendo al nome solo quando serve.
+ */
+public final class UserDictionary {
+
+    /** Identificativo usato per le recensioni senza autore */
+    public static final int NO_USER = NameDictionary.NONE;
+
+    private static final NameDictionary names = new NameDictionary();
+
+    /**
+     * Costruttore privato: la classe contiene solo metodi statici.
+     */
+    private UserDictionary() {
+    }
+
+    /**
+     * Restituisce l'identificativo di un nome utente, assegnandone uno nuovo se il nome non è ancora presente.
+     *
+     * @param username Nome utente, può essere null.
+     * @return         L'identificativo del nome utente, NO_USER se il nome è null.
+     */
+    public static int idOf(String username) {
+        return names.idOf(username);
+    }
+
+    /**
+     * Restituisce l'identificativo di un nome utente senza assegnarne uno nuovo, così i controlli
+     * su nomi inesistenti non fanno crescere il dizionario.
+     *
+     * @param username Nome utente.
+     * @return         L'identificativo del nome utente, NO_USER se il nome non è presente.
+     */
+    public static int find(String username) {
+        return username == null ? NO_USER : names.find(username);
+    }
+
+    /**
+     * Restituisce il nome utente associato a un identificativo.
+     *
+     * @param id Identificativo del nome utente.
+     * @return   Il nome utente, null se l'identificativo è NO_USER.
+     */
+    public static String nameOf(int id) {
+        return names.nameOf(id);
+    }
+}
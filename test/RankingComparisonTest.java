@@ -0,0 +1,103 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifica che il calcolo parallelo delle classifiche (parallel_ranking) produca gli stessi risultati
+ * di quello sequenziale su un catalogo sintetico generato in modo deterministico: stessi cambiamenti
+ * nelle prime posizioni di ogni città, con gli stessi hotel e gli stessi score.
+ *
+ * Compilazione ed esecuzione dalla radice del progetto:
+ *   javac -encoding UTF-8 -cp lib/gson-2.10.1.jar -d out src/*.java test/*.java
+ *   java -cp out:lib/gson-2.10.1.jar RankingComparisonTest
+ */
+public class RankingComparisonTest {
+
+    /** File degli hotel del servizio, mai letto: al termine vengono rimossi gli eventuali file di stato accanto */
+    private static final String HOTEL_FILE = "unused.json";
+
+    private static final int CITIES = 200;
+    private static final int HOTELS_PER_CITY = 40;
+    private static final int MAX_REVIEWS = 30;
+    private static final int TOP = 10;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws IOException {
+        long now = System.currentTimeMillis();
+        List<RankChange> sequential = rank(false, now);
+        List<RankChange> parallel = rank(true, now);
+
+        check(!sequential.isEmpty(), "the sequential pass produced no ranking");
+        check(sequential.size() == parallel.size(),
+                "different number of changes: " + sequential.size() + " vs " + parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            RankChange s = sequential.get(i);
+            RankChange p = parallel.get(i);
+            check(s.getCity().equals(p.getCity()) && s.getPosition() == p.getPosition()
+                            && s.getHotel().getId() == p.getHotel().getId()
+                            && s.getHotel().getScore() == p.getHotel().getScore(),
+                    "change " + i + " differs: " + s + " vs " + p);
+        }
+        System.out.println("OK: " + sequential.size() + " ranking positions identical in "
+                + CITIES + " cities (" + CITIES * HOTELS_PER_CITY + " hotels)");
+    }
+
+    /**
+     * Classifica il catalogo sintetico con un nuovo servizio degli hotel.
+     *
+     * @param parallel true per il calcolo parallelo.
+     * @param now      Istante di riferimento per lo score.
+     * @return         I cambiamenti prodotti dalla prima classifica, ovvero le prime posizioni di ogni città.
+     */
+    private static List<RankChange> rank(boolean parallel, long now) throws IOException {
+        HotelService service = new HotelService(HOTEL_FILE, "239.0.0.1", "0", parallel, TOP, false,
+                new NotificationLog(1), 0);
+        try {
+            return service.rankCities(catalog(now), now);
+        } finally {
+            service.close();
+            Files.deleteIfExists(new File(HOTEL_FILE + ".ranks").toPath());
+            Files.deleteIfExists(new File(HOTEL_FILE + ".popularity").toPath());
+        }
+    }
+
+    /**
+     * Genera il catalogo sintetico, sempre uguale a parità di seme.
+     * Molti hotel hanno le stesse recensioni, per verificare anche l'ordine a parità di score.
+     *
+     * @param now Istante di riferimento per le date delle recensioni.
+     * @return    Gli hotel del catalogo.
+     */
+    private static List<Hotel> catalog(long now) {
+        Random random = new Random(SEED);
+        List<Hotel> hotels = new ArrayList<>();
+        int id = 1;
+        for (int c = 0; c < CITIES; c++) {
+            for (int h = 0; h < HOTELS_PER_CITY; h++) {
+                Hotel hotel = new Hotel();
+                hotel.setId(id);
+                hotel.setName("Hotel " + id);
+                hotel.setCity("City " + c);
+                int reviews = random.nextInt(MAX_REVIEWS);
+                for (int r = 0; r < reviews; r++) {
+                    long date = now - TimeUnit.DAYS.toMillis(random.nextInt(365));
+                    hotel.setReview(new Review("user" + random.nextInt(50), 1 + random.nextInt(5),
+                            new Ratings(3, 3, 3, 3), date));
+                }
+                hotels.add(hotel);
+                id++;
+            }
+        }
+        return hotels;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifica il ripristino di classifiche salvate non più valide: il file delle classifiche contiene hotel
+ * che non esistono più nel catalogo (catalogo modificato o rinumerato) e una classifica vuota.
+ * Il servizio deve avviarsi e classificare quelle città come se non ci fosse nulla da ripristinare,
+ * notificando le stesse posizioni di un servizio senza classifiche salvate.
+ *
+ * Compilazione ed esecuzione dalla radice del progetto:
+ *   javac -encoding UTF-8 -cp lib/gson-2.10.1.jar -d out src/*.java test/*.java
+ *   java -cp out:lib/gson-2.10.1.jar RankingRestoreTest
+ */
+public class RankingRestoreTest {
+
+    private static final String[] CITIES = {"Aosta", "Roma"};
+    private static final int TOP = 3;
+
+    public static void main(String[] args) throws Exception {
+        File hotels = File.createTempFile("hotels", ".json");
+        File ranks = new File(hotels.getPath() + ".ranks");
+        try {
+            Files.copy(new File("Hotels.json").toPath(), hotels.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            long now = System.currentTimeMillis();
+            List<RankChange> fresh = rank(hotels, now);
+
+            // Aosta: solo ID inesistenti; Roma: classifica salvata vuota
+            Files.writeString(ranks.toPath(), "{\"Aosta\":[{\"id\":99999,\"score\":4.5},{\"id\":99998,\"score\":3.0}],"
+                    + "\"Roma\":[]}", StandardCharsets.UTF_8);
+            List<RankChange> restored = rank(hotels, now);
+
+            check(fresh.size() == CITIES.length * TOP, fresh.size() + " changes without saved rankings, expected "
+                    + CITIES.length * TOP);
+            check(restored.size() == fresh.size(), restored.size() + " changes after a stale restore, expected "
+                    + fresh.size());
+            for (int i = 0; i < fresh.size(); i++) {
+                RankChange f = fresh.get(i);
+                RankChange r = restored.get(i);
+                check(f.getCity().equals(r.getCity()) && f.getPosition() == r.getPosition()
+                        && f.getHotel().getId() == r.getHotel().getId(), "change " + i + " differs: " + f + " vs " + r);
+            }
+            System.out.println("OK: stale rankings of " + CITIES.length + " cities ignored, " + restored.size()
+                    + " positions notified");
+        } finally {
+            Files.deleteIfExists(hotels.toPath());
+            Files.deleteIfExists(ranks.toPath());
+        }
+    }
+
+    /**
+     * Classifica le città del test con un nuovo servizio, dopo aver letto le classifiche salvate.
+     *
+     * @return I cambiamenti notificati dalla prima classifica.
+     */
+    private static List<RankChange> rank(File hotels, long now) throws Exception {
+        HotelService service = new HotelService(hotels.getPath(), "239.0.0.1", "0", false, TOP, false,
+                new NotificationLog(1), 0);
+        try {
+            service.loadRankings();
+            List<Hotel> all = new ArrayList<>();
+            for (String city : CITIES) {
+                all.addAll(service.searchAllHotels(city));
+            }
+            return service.rankCities(all, now);
+        } finally {
+            service.close();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Stress test dell'inserimento concorrente delle recensioni: molti thread, come i ClientHandler, pubblicano
+ * recensioni sugli stessi hotel attraverso la MutationPipeline, condividendo anche gli stessi utenti.
+ * Al termine verifica che nessuna recensione sia andata persa (numero di recensioni e recensioni di ogni
+ * utente per hotel) e che numero di recensioni e badge di ogni utente siano coerenti.
+ * Verifica poi l'aggiornamento concorrente del badge chiamando direttamente User.setNumber_review,
+ * insieme a User.setBadge con un livello inferiore, che non deve abbassare il badge.
+ *
+ * Compilazione ed esecuzione dalla radice del progetto:
+ *   javac -encoding UTF-8 -cp lib/gson-2.10.1.jar -d out src/*.java test/*.java
+ *   java -cp out:lib/gson-2.10.1.jar ReviewStressTest [thread] [recensioni per thread]
+ */
+public class ReviewStressTest {
+
+    private static final String CITY = "Aosta";
+    private static final int HOT_HOTELS = 3;
+    private static final int USERS = 16;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        File hotels = File.createTempFile("hotels", ".json");
+        try {
+            pipelineReviews(hotels, threads, perThread);
+        } finally {
+            // Il file degli hotel e i file di stato salvati accanto
+            for (String suffix : new String[]{"", ".users", ".ranks", ".popularity"}) {
+                Files.deleteIfExists(new File(hotels.getPath() + suffix).toPath());
+            }
+        }
+        concurrentBadges(threads, perThread);
+    }
+
+    /**
+     * Pubblica le recensioni da più thread e verifica lo stato finale di hotel e utenti.
+     *
+     * @param hotels File degli hotel del test, sovrascritto con una copia di Hotels.json.
+     */
+    private static void pipelineReviews(File hotels, int threads, int perThread) throws Exception {
+        Files.copy(new File("Hotels.json").toPath(), hotels.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        HotelService hotelService = new HotelService(hotels.getPath(), "239.255.0.1", "45678", false, 1, false,
+                new NotificationLog(1), 0);
+        List<Hotel> hot = hotelService.searchAllHotels(CITY).subList(0, HOT_HOTELS);
+        MutationPipeline pipeline = new MutationPipeline(64, new AuthenticationService(hotels.getPath() + ".users"),
+                hotelService);
+        pipeline.start();
+
+        List<User> users = new ArrayList<>();
+        for (int u = 0; u < USERS; u++) {
+            users.add(new User("stress" + u, "password"));
+        }
+        // Recensioni pubblicate con successo per utente e per hotel
+        AtomicIntegerArray perUser = new AtomicIntegerArray(USERS);
+        AtomicIntegerArray perHotel = new AtomicIntegerArray(HOT_HOTELS);
+        AtomicInteger failures = new AtomicInteger();
+
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    go.await();
+                    for (int i = 0; i < perThread; i++) {
+                        int u = (thread + i) % USERS;
+                        int h = i % HOT_HOTELS;
+                        User user = users.get(u);
+                        Hotel hotel = hot.get(h);
+                        pipeline.submitReview(user, hotel, new Review(user.getUsername(), hotel.getName(), 1 + u % 5,
+                                new Ratings(3, 3, 3, 3)));
+                        perUser.incrementAndGet(u);
+                        perHotel.incrementAndGet(h);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    failures.incrementAndGet();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        pipeline.shutdown(10);
+        hotelService.close();
+
+        check(failures.get() == 0, failures.get() + " threads failed");
+        int total = 0;
+        for (int h = 0; h < HOT_HOTELS; h++) {
+            Hotel hotel = hotelService.searchHotelById(hot.get(h).getId());
+            int expected = perHotel.get(h);
+            total += expected;
+            check(hotel.getNumber_reviews() == expected,
+                    hotel.getName() + ": Number_reviews " + hotel.getNumber_reviews() + ", expected " + expected);
+            check(hotel.getReviews().size() == expected,
+                    hotel.getName() + ": " + hotel.getReviews().size() + " reviews stored, expected " + expected);
+            // Ogni recensione è presente con il proprio autore
+            Map<String, Integer> byUser = new HashMap<>();
+            for (Review review : hotel.getReviews()) {
+                byUser.merge(review.getUser(), 1, Integer::sum);
+            }
+            for (int u = 0; u < USERS; u++) {
+                int count = 0;
+                for (int t = 0; t < threads; t++) {
+                    for (int i = 0; i < perThread; i++) {
+                        if ((t + i) % USERS == u && i % HOT_HOTELS == h) {
+                            count++;
+                        }
+                    }
+                }
+                int stored = byUser.getOrDefault(users.get(u).getUsername(), 0);
+                check(stored == count, hotel.getName() + ": " + stored + " reviews by " + users.get(u).getUsername()
+                        + ", expected " + count);
+            }
+        }
+        for (int u = 0; u < USERS; u++) {
+            User user = users.get(u);
+            check(user.getNumber_review() == perUser.get(u),
+                    user.getUsername() + ": number_review " + user.getNumber_review() + ", expected " + perUser.get(u));
+            checkBadge(user);
+        }
+        System.out.printf("OK: %d reviews from %d threads on %d hotels in %d ms, none lost%n",
+                total, threads, HOT_HOTELS, elapsed / 1_000_000);
+    }
+
+    /**
+     * Incrementa da più thread il numero di recensioni degli stessi utenti, verificando che nessun incremento
+     * vada perso e che il badge finale corrisponda al numero di recensioni.
+     */
+    private static void concurrentBadges(int threads, int perThread) throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int u = 0; u < USERS; u++) {
+            users.add(new User("badge" + u, "password"));
+        }
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    User user = users.get((thread + i) % USERS);
+                    Level before = user.getBadge().getLevel();
+                    user.setNumber_review();
+                    // Un badge impostato esplicitamente a un livello inferiore non abbassa quello attuale
+                    user.setBadge(Level.RECENSORE);
+                    // Il badge non viene mai abbassato
+                    if (user.getBadge().getLevel().getValue() < before.getValue()) {
+                        System.out.println(user.getUsername() + ": badge lowered from " + before);
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        check(failures.get() == 0, failures.get() + " badges lowered");
+        int total = 0;
+        for (User user : users) {
+            total += user.getNumber_review();
+            checkBadge(user);
+        }
+        check(total == threads * perThread, "number_review total " + total + ", expected " + threads * perThread);
+        System.out.printf("OK: %d concurrent badge updates on %d users, none lost%n", total, USERS);
+    }
+
+    /**
+     * Verifica che il badge di un utente sia il livello più alto raggiunto con il suo numero di recensioni.
+     */
+    private static void checkBadge(User user) {
+        Level expected = Level.RECENSORE;
+        for (Level level : Level.values()) {
+            if (user.getNumber_review() >= level.getValue()) {
+                expected = level;
+            }
+        }
+        check(user.getBadge().getLevel() == expected,
+                user.getUsername() + ": badge " + user.getBadge().getLevel() + ", expected " + expected);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}